@@ -0,0 +1,22 @@
+package cn.edu.hitsz.compiler;
+
+/**
+ * 编译过程中发现的一个错误
+ * <br>
+ * 词法分析与语法分析遇到错误时不再立即抛出异常, 而是记录下错误并跳过出错的部分继续分析, 这样一次编译便能报告出所有错误.
+ *
+ * @param kind    错误的种类
+ * @param offset  错误在源代码中的字节偏移, 无法确定时为 -1
+ * @param message 错误的描述
+ */
+public record Diagnostic(Kind kind, int offset, String message) {
+    public enum Kind {Lexical, Syntax}
+
+    @Override
+    public String toString() {
+        if (offset < 0) {
+            return "%s error: %s".formatted(kind, message);
+        }
+        return "%s error at %d: %s".formatted(kind, offset, message);
+    }
+}
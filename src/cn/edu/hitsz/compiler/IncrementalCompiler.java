@@ -0,0 +1,349 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 增量编译器, 用于源代码被反复编辑后重新编译的场景
+ * <br>
+ * 源语言的程序是一串以分号结尾的语句 ({@code S_list -> S Semicolon S_list | S Semicolon}), 每条语句的 token, 规约序列, IR 与声明都只取决于它自身,
+ * 因此可以按语句缓存词法分析, 语法分析与 IR 生成的结果. 源代码被编辑后, 先由新旧文本的公共前缀与后缀求出受损的字节范围并扩展到语句边界,
+ * 只对其中的语句重新分析, 再把结果拼接回语句列表; 受损范围之后, 新旧文本一旦在某个分号之后重新对齐, 其余语句便原样复用.
+ * <br>
+ * 每条语句单独作为一个完整的程序 ({@code P -> S_list -> S Semicolon}) 交给 LR 驱动程序分析, 去掉末尾对 S_list 的规约即为它在整个程序中的规约序列,
+ * 整个程序末尾对 S_list 与 P 的规约只取决于语句数量, 输出时再补上. 临时变量在输出时按定义顺序重新编号, 符号表也由各语句缓存的标识符与声明拼出,
+ * 因此各项输出与从头编译完全相同.
+ * <br>
+ * 使用前需先调用 {@link TokenKind#loadTokenKinds()}. 语句以 {@code ;} 字节切分, 因此使用手写的词法自动机 (其中 {@code ;} 总是处在 token 的边界上).
+ */
+public class IncrementalCompiler {
+    /**
+     * @param lrTable 语法分析使用的 LR 分析表, 在此编译一次后供每条语句的分析共用
+     */
+    public IncrementalCompiler(LRTable lrTable) {
+        this.lrTable = new CompiledLRTable(lrTable);
+    }
+
+    /**
+     * 读取源代码并编译. 第一次调用时编译整个文件, 之后的调用只重新编译与上一次相比被改动的语句.
+     * 若新的源代码有错, 将抛出异常并保留上一次的编译结果.
+     *
+     * @param path 源代码路径
+     */
+    public void update(String path) {
+        final var newSource = FileUtils.readBytes(path);
+        final var prefix = Arrays.mismatch(source, newSource);
+        if (prefix < 0) {
+            return;
+        }
+
+        // 受损范围为 [prefix, oldLength - suffix), 在新文本中对应 [prefix, newLength - suffix)
+        final var maxSuffix = Math.min(source.length, newSource.length) - prefix;
+        var suffix = 0;
+        while (suffix < maxSuffix && source[source.length - 1 - suffix] == newSource[newSource.length - 1 - suffix]) {
+            suffix++;
+        }
+        final var oldDamageEnd = source.length - suffix;
+        final var delta = newSource.length - source.length;
+
+        // 从包含受损范围起点的语句开始重新分析, 之前的语句以分号结尾, 不受影响
+        var first = 0;
+        var firstBegin = 0;
+        while (first < statements.size() && firstBegin + statements.get(first).length() <= prefix) {
+            firstBegin += statements.get(first).length();
+            first++;
+        }
+
+        final var added = new ArrayList<Statement>();
+        var last = first;
+        var oldBegin = firstBegin;
+        var begin = firstBegin;
+        while (begin < newSource.length) {
+            final var end = statementEnd(newSource, begin);
+            added.add(compileStatement(newSource, begin, end));
+            begin = end;
+
+            // 跳过已被新语句覆盖的旧语句, 若越过受损范围后新旧语句边界重合, 之后的语句便可以复用
+            while (last < statements.size() && oldBegin < begin - delta) {
+                oldBegin += statements.get(last).length();
+                last++;
+            }
+            if (oldBegin == begin - delta && oldBegin >= oldDamageEnd) {
+                break;
+            }
+        }
+        if (begin == newSource.length) {
+            last = statements.size();
+        }
+
+        // 各语句是单独分析的, 拼接后还要检查是否有标识符在不同语句中被重复声明, 有错时不能替换上一次的结果
+        final var spliced = new ArrayList<Statement>(statements.size() - (last - first) + added.size());
+        spliced.addAll(statements.subList(0, first));
+        spliced.addAll(added);
+        spliced.addAll(statements.subList(last, statements.size()));
+        final var declared = new HashSet<String>();
+        for (final var statement : spliced) {
+            for (final var identifier : statement.declarations().keySet()) {
+                if (!declared.add(identifier)) {
+                    throw new RuntimeException("Can NOT set type for an entry twice");
+                }
+            }
+        }
+
+        statements.clear();
+        statements.addAll(spliced);
+        source = newSource;
+        instructions = null;
+    }
+
+    /**
+     * @return 所有 token, 以 eof 结尾
+     */
+    public List<Token> getTokens() {
+        final var result = new ArrayList<Token>();
+        for (final var statement : statements) {
+            result.addAll(statement.tokens());
+        }
+        result.add(Token.eof());
+        return result;
+    }
+
+    /**
+     * @return 按规约顺序排列的所有产生式
+     */
+    public List<Production> getProductions() {
+        final var result = new ArrayList<Production>();
+        var count = 0;
+        for (final var statement : statements) {
+            if (!statement.tokens().isEmpty()) {
+                result.addAll(statement.reductions());
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new RuntimeException("Source code contains no statement");
+        }
+
+        // 文法是右递归的, 对 S_list 的规约都发生在程序末尾
+        result.add(GrammarInfo.getProductionByText("S_list -> S Semicolon"));
+        final var concat = GrammarInfo.getProductionByText("S_list -> S Semicolon S_list");
+        for (int idx = 1; idx < count; idx++) {
+            result.add(concat);
+        }
+        result.add(GrammarInfo.getBeginProduction());
+        return result;
+    }
+
+    /**
+     * @return 语义分析前的符号表, 即源代码中出现过的所有标识符
+     */
+    public SymbolTable getOldSymbolTable() {
+        final var table = new SymbolTable();
+        for (final var statement : statements) {
+            for (final var identifier : statement.identifiers()) {
+                if (!table.has(identifier)) {
+                    table.add(identifier);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return 语义分析后的符号表
+     */
+    public SymbolTable getNewSymbolTable() {
+        final var table = getOldSymbolTable();
+        for (final var statement : statements) {
+            statement.declarations().forEach((identifier, type) -> table.get(identifier).setType(type));
+        }
+        return table;
+    }
+
+    /**
+     * @return 整个程序的 IR
+     */
+    public List<Instruction> getIR() {
+        if (instructions == null) {
+            final var temps = new HashMap<IRVariable, IRVariable>();
+            final var result = new ArrayList<Instruction>();
+            for (final var statement : statements) {
+                for (final var instruction : statement.instructions()) {
+                    result.add(renumber(instruction, temps));
+                }
+            }
+            instructions = result;
+        }
+
+        return instructions;
+    }
+
+    public void dumpTokens(String path) {
+        FileUtils.writeLines(path, getTokens().stream().map(Token::toString).toList());
+    }
+
+    public void dumpProductions(String path) {
+        FileUtils.writeLines(path, getProductions().stream().map(Production::toString).toList());
+    }
+
+    public void dumpIR(String path) {
+        FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
+    }
+
+    /**
+     * 一条语句的分析结果. 语句包含它之前的空白, 直到并包括结尾的分号; 所有语句首尾相接, 恰好覆盖整个源代码.
+     *
+     * @param length       语句在源代码中的字节数
+     * @param tokens       语句的 token, 不含 eof. 只有空白的语句没有 token
+     * @param reductions   语句在整个程序中的规约序列
+     * @param instructions 语句的 IR, 临时变量尚未重新编号
+     * @param identifiers  语句中出现的标识符
+     * @param declarations 语句声明的标识符及其类型
+     */
+    private record Statement(int length, List<Token> tokens, List<Production> reductions,
+                             List<Instruction> instructions, Set<String> identifiers,
+                             Map<String, SourceCodeType> declarations) {
+    }
+
+    private final CompiledLRTable lrTable;
+    private final List<Statement> statements = new ArrayList<>();
+    private byte[] source = new byte[0];
+    private List<Instruction> instructions = null;
+
+    private static int statementEnd(byte[] source, int begin) {
+        for (int idx = begin; idx < source.length; idx++) {
+            if (source[idx] == ';') {
+                return idx + 1;
+            }
+        }
+        return source.length;
+    }
+
+    private Statement compileStatement(byte[] source, int begin, int end) {
+        final var symbolTable = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadBuffer(ByteBuffer.wrap(source, begin, end - begin).slice());
+        lexer.run();
+
+        final var tokenBuffer = lexer.getTokenBuffer();
+        final var tokens = new ArrayList<Token>();
+        final var identifiers = new LinkedHashSet<String>();
+        final var idKind = TokenKind.fromString("id");
+        for (int idx = 0; idx < tokenBuffer.size() - 1; idx++) {
+            tokens.add(tokenBuffer.get(idx));
+            if (tokenBuffer.kindAt(idx) == idKind) {
+                identifiers.add(tokenBuffer.textAt(idx));
+            }
+        }
+        if (tokens.isEmpty()) {
+            return new Statement(end - begin, List.of(), List.of(), List.of(), Set.of(), Map.of());
+        }
+
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(tokenBuffer);
+        parser.loadLRTable(lrTable);
+
+        final var reductions = new ArrayList<Production>();
+        parser.registerObserver(new ActionObserver() {
+            @Override
+            public void whenShift(Status currentStatus, Token currentToken) {
+            }
+
+            @Override
+            public void whenReduce(Status currentStatus, Production production) {
+                reductions.add(production);
+            }
+
+            @Override
+            public void whenAccept(Status currentStatus) {
+            }
+
+            @Override
+            public void setSymbolTable(SymbolTable table) {
+            }
+        });
+        parser.registerObserver(new SemanticAnalyzer());
+        final var irGenerator = new IRGenerator();
+        parser.registerObserver(irGenerator);
+        parser.run();
+
+        final var diagnostics = new ArrayList<Diagnostic>(lexer.getDiagnostics());
+        diagnostics.addAll(parser.getDiagnostics());
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::offset));
+        if (!diagnostics.isEmpty()) {
+            // 语句是单独分析的, 错误位置要加上语句的起始位置
+            throw new RuntimeException("Compilation failed with %d error(s):%n%s".formatted(
+                diagnostics.size(),
+                diagnostics.stream()
+                    .map(diagnostic -> new Diagnostic(diagnostic.kind(), diagnostic.offset() < 0 ? -1 : diagnostic.offset() + begin, diagnostic.message()))
+                    .map(Diagnostic::toString)
+                    .collect(Collectors.joining("\n"))));
+        }
+
+        // 去掉把这条语句单独当作程序时对 S_list -> S Semicolon 的规约
+        reductions.remove(reductions.size() - 1);
+
+        final var declarations = new LinkedHashMap<String, SourceCodeType>();
+        for (final var identifier : identifiers) {
+            final var type = symbolTable.get(identifier).getType();
+            if (type != null) {
+                declarations.put(identifier, type);
+            }
+        }
+
+        return new Statement(end - begin, tokens, reductions, irGenerator.getIR(), identifiers, declarations);
+    }
+
+    /**
+     * 临时变量总是先定义后使用, 按出现顺序编号即与从头编译时的编号相同
+     */
+    private static Instruction renumber(Instruction instruction, Map<IRVariable, IRVariable> temps) {
+        return switch (instruction.getKind()) {
+            case ADD -> Instruction.createAdd(
+                renumber(instruction.getResult(), temps), renumber(instruction.getLHS(), temps), renumber(instruction.getRHS(), temps));
+            case SUB -> Instruction.createSub(
+                renumber(instruction.getResult(), temps), renumber(instruction.getLHS(), temps), renumber(instruction.getRHS(), temps));
+            case MUL -> Instruction.createMul(
+                renumber(instruction.getResult(), temps), renumber(instruction.getLHS(), temps), renumber(instruction.getRHS(), temps));
+            case MOV -> Instruction.createMov(renumber(instruction.getResult(), temps), renumber(instruction.getFrom(), temps));
+            case RET -> Instruction.createRet(renumber(instruction.getReturnValue(), temps));
+        };
+    }
+
+    private static IRVariable renumber(IRVariable variable, Map<IRVariable, IRVariable> temps) {
+        if (!variable.isTemp()) {
+            return variable;
+        }
+
+        var renumbered = temps.get(variable);
+        if (renumbered == null) {
+            renumbered = IRVariable.temp(temps.size());
+            temps.put(variable, renumbered);
+        }
+        return renumbered;
+    }
+
+    private static IRValue renumber(IRValue value, Map<IRVariable, IRVariable> temps) {
+        return value instanceof IRVariable variable ? renumber(variable, temps) : value;
+    }
+}
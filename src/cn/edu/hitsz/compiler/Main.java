@@ -8,13 +8,16 @@ import cn.edu.hitsz.compiler.parser.ProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
-import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.TableSnapshot;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 public class Main {
     public static void main(String[] args) {
@@ -24,18 +27,28 @@ public class Main {
 
         // 词法分析
         final var lexer = new LexicalAnalyzer(symbolTable);
+        // // 或使用框架自带部分直接从 lexer_spec.txt 构造词法自动机
+        // final var lexerGenerator = new LexerGenerator();
+        // lexerGenerator.run();
+        // final var lexer = new LexicalAnalyzer(symbolTable, lexerGenerator.getTable());
         lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
         lexer.run();
+        // // 对于很大的源代码, 可以改为按语句边界切分后并行分析, 结果相同
+        // lexer.runParallel();
         lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
         final var tokens = lexer.getTokens();
         symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
 
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
+        // 读取第三方程序构造的 LR 分析表, 首次读取后生成二进制快照, 之后直接映射快照而不再解析 CSV 与语法文件
+        final var tableSnapshot = new TableSnapshot();
+        final var lrTable = tableSnapshot.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_SNAPSHOT_PATH);
 
-        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        // final var tableGenerator = new TableGenerator();
+        // // 或每次都直接读取 CSV 格式的分析表
+        // final var tableLoader = new TableLoader();
+        // final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
+
+        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表, 可选 SLR(1), 规范 LR(1) 或 LALR(1)
+        // final var tableGenerator = new TableGenerator(TableGenerator.Mode.LALR);
         // tableGenerator.run();
         // final var lrTable = tableGenerator.getTable();
         // lrTable.dumpTable("data/out/lrTable.csv");
@@ -43,7 +56,13 @@ public class Main {
         // 加载 LR 分析驱动程序
         final var parser = new SyntaxAnalyzer(symbolTable);
         parser.loadTokens(tokens);
+        // // 或不经过 token 列表, 让语法分析按需从词法分析器拉取 token, 使两者交替进行
+        // parser.loadTokens(lexer.lazyTokens());
         parser.loadLRTable(lrTable);
+        // // 或以默认规约加行位移压缩的布局加载分析表, 表更小, 但出错前可能多做几次规约
+        // parser.loadLRTable(lrTable, CompiledLRTable.Layout.COMPRESSED);
+        // // 或使用由分析表生成的专用分析器, 分析表改变后需先以 new ParserGenerator(lrTable).dump(...) 重新生成其源代码并重新编译
+        // parser.useGeneratedParser();
 
         // 加入生成规约列表的 Observer
         final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
@@ -60,10 +79,22 @@ public class Main {
         // 执行语法解析并在解析过程中依次调用各 Observer
         parser.run();
 
+        // 词法与语法分析都会跳过出错的部分继续进行, 所有错误在此一并报告
+        final var diagnostics = new ArrayList<Diagnostic>(lexer.getDiagnostics());
+        diagnostics.addAll(parser.getDiagnostics());
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::offset));
+        if (!diagnostics.isEmpty()) {
+            throw new RuntimeException("Compilation failed with %d error(s):%n%s".formatted(
+                diagnostics.size(), diagnostics.stream().map(Diagnostic::toString).collect(Collectors.joining("\n"))));
+        }
+
         // 各 Observer 输出结果
         productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
         symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
         final var instructions = irGenerator.getIR();
+        // // 或对 IR 做常量传播, 公共子表达式删除, 复制传播与死代码删除, 之后的模拟执行与汇编生成都使用优化后的 IR, 其输出与 data/std 中的不再相同
+        // final var instructions = new IROptimizer(irGenerator.getIR())
+        //     .foldConstants().numberValues().propagateCopies().eliminateDeadCode().getIR();
         irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
 
         // 模拟执行 IR 并输出结果
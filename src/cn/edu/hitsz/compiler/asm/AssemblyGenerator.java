@@ -36,6 +36,8 @@ public class AssemblyGenerator {
     private final List<String> assemblyCode = new ArrayList<>();
     // 中间代码
     private List<Instruction> originInstructions;
+    // 各变量最后一次作为参数被使用的指令下标
+    private final Map<IRVariable, Integer> lastUse = new HashMap<>();
 
     /**
      * 加载前端提供的中间代码
@@ -48,6 +50,25 @@ public class AssemblyGenerator {
     public void loadIR(List<Instruction> originInstructions) {
         // TODO: 读入前端提供的中间代码并生成所需要的信息
         this.originInstructions = originInstructions;
+
+        // 经过值编号等优化后, 一个临时变量可能被多次使用, 只有在最后一次使用后才能释放其寄存器
+        lastUse.clear();
+        for (int index = 0; index < originInstructions.size(); index++) {
+            for (final var operand : originInstructions.get(index).getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    lastUse.put(variable, index);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param variable 指令的参数
+     * @param index    指令的下标
+     * @return 参数是否是临时变量且此后不再被使用
+     */
+    private boolean isLastUseOfTemp(IRVariable variable, int index) {
+        return variable.isTemp() && lastUse.get(variable) == index;
     }
 
     /**
@@ -112,7 +133,8 @@ public class AssemblyGenerator {
      */
     public void run() {
         // TODO: 执行寄存器分配与代码生成
-        for (var instruction : originInstructions) {
+        for (int index = 0; index < originInstructions.size(); index++) {
+            final var instruction = originInstructions.get(index);
             int resultReg = -1;
             int lhsReg = -1;
             int rhsReg = -1;
@@ -140,7 +162,7 @@ public class AssemblyGenerator {
                     assemblyCode.add("mv t" + resultReg + ", t" + lhsReg);
 
                     // 如果是临时变量，释放寄存器
-                    if (((IRVariable)instruction.getFrom()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getFrom(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
                 }
@@ -157,7 +179,7 @@ public class AssemblyGenerator {
                     resultReg = writeVariable2Reg(instruction.getResult());
                     assemblyCode.add("addi t" + resultReg + ", t" + rhsReg + ", " + ((IRImmediate)instruction.getLHS()).getValue());
 
-                    if (((IRVariable)instruction.getRHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getRHS(), index)) {
                         registerVariableMap.remove(rhsReg);
                     }
                 }
@@ -171,7 +193,7 @@ public class AssemblyGenerator {
                     resultReg = writeVariable2Reg(instruction.getResult());
                     assemblyCode.add("addi t" + resultReg + ", t" + lhsReg + ", " + ((IRImmediate)instruction.getRHS()).getValue());
 
-                    if (((IRVariable)instruction.getLHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getLHS(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
                 }
@@ -191,10 +213,10 @@ public class AssemblyGenerator {
                     assemblyCode.add("add t" + resultReg + ", t" + lhsReg + ", t" + rhsReg);
 
                     // 如果是临时变量，释放寄存器
-                    if (((IRVariable)instruction.getLHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getLHS(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
-                    if (((IRVariable)instruction.getRHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getRHS(), index)) {
                         registerVariableMap.remove(rhsReg);
                     }
                 }
@@ -216,7 +238,7 @@ public class AssemblyGenerator {
                     assemblyCode.add("sub t" + resultReg + ", t" + tempReg + ", t" + rhsReg);
 
                     registerVariableMap.remove(tempReg);
-                    if (((IRVariable)instruction.getRHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getRHS(), index)) {
                         registerVariableMap.remove(rhsReg);
                     }
                 }
@@ -230,7 +252,7 @@ public class AssemblyGenerator {
                     resultReg = writeVariable2Reg(instruction.getResult());
                     assemblyCode.add("addi t" + resultReg + ", t" + lhsReg + ", -" + ((IRImmediate)instruction.getRHS()).getValue());
 
-                    if (((IRVariable)instruction.getLHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getLHS(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
                 }
@@ -254,10 +276,10 @@ public class AssemblyGenerator {
                     assemblyCode.add("sub t" + resultReg + ", t" + lhsReg + ", t" + rhsReg);
 
                     // 如果是临时变量，释放寄存器
-                    if (((IRVariable)instruction.getLHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getLHS(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
-                    if (((IRVariable)instruction.getRHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getRHS(), index)) {
                         registerVariableMap.remove(rhsReg);
                     }
                 }
@@ -274,7 +296,7 @@ public class AssemblyGenerator {
                     resultReg = writeVariable2Reg(instruction.getResult());
                     assemblyCode.add("mul t" + resultReg + ", t" + rhsReg + ", " + ((IRImmediate)instruction.getLHS()).getValue());
 
-                    if (((IRVariable)instruction.getRHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getRHS(), index)) {
                         registerVariableMap.remove(rhsReg);
                     }
                 }
@@ -288,7 +310,7 @@ public class AssemblyGenerator {
                     resultReg = writeVariable2Reg(instruction.getResult());
                     assemblyCode.add("mul t" + resultReg + ", t" + lhsReg + ", " + ((IRImmediate)instruction.getRHS()).getValue());
 
-                    if (((IRVariable)instruction.getLHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getLHS(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
                 }
@@ -312,10 +334,10 @@ public class AssemblyGenerator {
                     assemblyCode.add("mul t" + resultReg + ", t" + lhsReg + ", t" + rhsReg);
 
                     // 如果是临时变量，释放寄存器
-                    if (((IRVariable)instruction.getLHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getLHS(), index)) {
                         registerVariableMap.remove(lhsReg);
                     }
-                    if (((IRVariable)instruction.getRHS()).isTemp()) {
+                    if (isLastUseOfTemp((IRVariable)instruction.getRHS(), index)) {
                         registerVariableMap.remove(rhsReg);
                     }
                 }
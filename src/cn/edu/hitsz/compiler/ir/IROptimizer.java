@@ -0,0 +1,460 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * IR 上的优化
+ * <br>
+ * 各优化按调用顺序依次作用于同一份指令序列, 可以任意组合, 例如
+ * {@code new IROptimizer(ir).foldConstants().numberValues().propagateCopies().eliminateDeadCode().getIR()}.
+ * <br>
+ * 本项目的 IR 是没有跳转的直线代码, 且执行完所有指令后以最后一条 RET 的值作为返回值, 各优化都基于这一点.
+ * 优化假定程序中不存在使用未赋值变量的情况, 此时优化前后程序的返回值相同.
+ * <br>
+ * 优化后的 IR 仍保持 {@link cn.edu.hitsz.compiler.asm.AssemblyGenerator} 能够处理的形式: RET 的参数保持为变量,
+ * 二元运算至多有一个立即数参数.
+ */
+public class IROptimizer {
+    /**
+     * @param instructions 待优化的 IR, 不会被修改
+     */
+    public IROptimizer(List<Instruction> instructions) {
+        this.instructions = new ArrayList<>(instructions);
+    }
+
+    /**
+     * @return 优化后的 IR
+     */
+    public List<Instruction> getIR() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    /**
+     * 常量传播与常量折叠
+     * <br>
+     * 按执行顺序记录每个变量当前是否为常量: 参数都是常量的运算折叠为把结果作为立即数的 MOV, 只有一个参数是常量的运算把该参数替换为立即数.
+     * 直线代码上每个变量在每一点只有一个到达的定值, 稀疏条件常量传播在这里退化为一次顺序扫描.
+     *
+     * @return this
+     */
+    public IROptimizer foldConstants() {
+        final var constants = new HashMap<IRVariable, Integer>();
+        for (int idx = 0; idx < instructions.size(); idx++) {
+            final var instruction = instructions.get(idx);
+            final var kind = instruction.getKind();
+            switch (kind) {
+                case MOV -> {
+                    final var result = instruction.getResult();
+                    final var from = constantOf(instruction.getFrom(), constants);
+                    if (from != null) {
+                        constants.put(result, from);
+                        instructions.set(idx, Instruction.createMov(result, IRImmediate.of(from)));
+                    } else {
+                        constants.remove(result);
+                    }
+                }
+                case ADD, SUB, MUL -> {
+                    final var result = instruction.getResult();
+                    final var lhs = constantOf(instruction.getLHS(), constants);
+                    final var rhs = constantOf(instruction.getRHS(), constants);
+                    if (lhs != null && rhs != null) {
+                        final var value = switch (kind) {
+                            case ADD -> lhs + rhs;
+                            case SUB -> lhs - rhs;
+                            default -> lhs * rhs;
+                        };
+                        constants.put(result, value);
+                        instructions.set(idx, Instruction.createMov(result, IRImmediate.of(value)));
+                    } else {
+                        constants.remove(result);
+                        if (lhs != null || rhs != null) {
+                            final IRValue newLHS = lhs != null ? IRImmediate.of(lhs) : instruction.getLHS();
+                            final IRValue newRHS = rhs != null ? IRImmediate.of(rhs) : instruction.getRHS();
+                            instructions.set(idx, create(kind, result, newLHS, newRHS));
+                        }
+                    }
+                }
+                case RET -> {
+                    // RET 的参数保持为变量, 其常量值已经由对应的 MOV 写入
+                }
+                default -> throw new RuntimeException("Unknown instruction kind: " + kind);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 由活跃变量分析驱动的死代码删除
+     * <br>
+     * 删除结果在其后不再活跃的指令 (死存储) 与最后一条 RET 之前的 RET, 见 {@link #analyzeLiveness()}.
+     *
+     * @return this
+     */
+    public IROptimizer eliminateDeadCode() {
+        final var liveness = analyzeLiveness();
+        final var kept = new ArrayList<Instruction>();
+        for (int idx = 0; idx < instructions.size(); idx++) {
+            if (liveness.useful()[idx]) {
+                kept.add(instructions.get(idx));
+            }
+        }
+
+        instructions.clear();
+        instructions.addAll(kept);
+        return this;
+    }
+
+    /**
+     * 复制传播
+     * <br>
+     * 先做反向的合并: 对 {@code t = ...; ...; x = t}, 若 t 在这条 MOV 之后不再活跃, 且 x 在两者之间既未被读取也未被赋值,
+     * 就让 t 的定值直接写入 x, 期间对 t 的使用改为 x, 并删除这条 MOV. IRGenerator 为每条赋值语句生成的 "临时变量 MOV 到具名变量" 由此消失.
+     * <br>
+     * 再做正向的传播: {@code x = y} 之后, 在 x 与 y 都未被重新赋值前, 对 x 的使用都改为 y. 不再被使用的 MOV 留给 {@link #eliminateDeadCode()} 删除.
+     * 只在变量之间传播, 立即数的传播由 {@link #foldConstants()} 负责.
+     *
+     * @return this
+     */
+    public IROptimizer propagateCopies() {
+        coalesceCopies();
+
+        final var copies = new HashMap<IRVariable, IRVariable>();
+        final var copiesOf = new HashMap<IRVariable, Set<IRVariable>>();
+        for (int idx = 0; idx < instructions.size(); idx++) {
+            final var instruction = instructions.get(idx);
+            final var operands = new ArrayList<IRValue>(instruction.getOperands());
+            var changed = false;
+            for (int pos = 0; pos < operands.size(); pos++) {
+                if (operands.get(pos) instanceof IRVariable variable && copies.containsKey(variable)) {
+                    operands.set(pos, copies.get(variable));
+                    changed = true;
+                }
+            }
+            final var result = instruction.getKind().isReturn() ? null : instruction.getResult();
+            if (changed) {
+                instructions.set(idx, rebuild(instruction.getKind(), result, operands));
+            }
+            if (result == null) {
+                continue;
+            }
+
+            // result 被重新赋值, 以它为源或目的的复制都失效
+            final var source = copies.remove(result);
+            if (source != null) {
+                copiesOf.get(source).remove(result);
+            }
+            final var targets = copiesOf.remove(result);
+            if (targets != null) {
+                for (final var target : targets) {
+                    copies.remove(target);
+                }
+            }
+
+            if (instruction.getKind().isUnary() && operands.get(0) instanceof IRVariable from && !from.equals(result)) {
+                copies.put(result, from);
+                copiesOf.computeIfAbsent(from, v -> new HashSet<>()).add(result);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 局部值编号, 删除公共子表达式
+     * <br>
+     * 整段 IR 是一个基本块. 按执行顺序给每个值一个编号: 立即数按其值编号, 运算按 (种类, 参数的编号) 编号, ADD 与 MUL 的两个参数按编号排序,
+     * 于是 {@code a + b} 与 {@code b + a} 得到同一编号. 对每个编号记录当前持有它的变量, 变量被重新赋值时从中移除.
+     * <br>
+     * 已算过的运算改写为从持有该值的变量 MOV, 参数也改写为持有该值的首选变量 (具名变量优先, 它们在汇编中一直占用寄存器).
+     * 于是重复计算得到的临时变量不再被使用, 之后再调用 {@link #eliminateDeadCode()} 即可删除这些 MOV.
+     * 参数不会被改写为立即数, 以保持汇编生成所需的形式.
+     *
+     * @return this
+     */
+    public IROptimizer numberValues() {
+        final var numbering = new ValueNumbering();
+        for (int idx = 0; idx < instructions.size(); idx++) {
+            final var instruction = instructions.get(idx);
+            final var kind = instruction.getKind();
+            switch (kind) {
+                case MOV -> {
+                    final var from = numbering.canonical(instruction.getFrom());
+                    final var number = numbering.numberOf(from);
+                    numbering.assign(instruction.getResult(), number);
+                    instructions.set(idx, Instruction.createMov(instruction.getResult(), from));
+                }
+                case ADD, SUB, MUL -> {
+                    final var lhs = numbering.canonical(instruction.getLHS());
+                    final var rhs = numbering.canonical(instruction.getRHS());
+                    final var result = instruction.getResult();
+                    var lhsNumber = numbering.numberOf(lhs);
+                    var rhsNumber = numbering.numberOf(rhs);
+                    if (kind != InstructionKind.SUB && lhsNumber > rhsNumber) {
+                        final var swap = lhsNumber;
+                        lhsNumber = rhsNumber;
+                        rhsNumber = swap;
+                    }
+
+                    final var expression = new Expression(kind, lhsNumber, rhsNumber);
+                    final var known = numbering.expressions.get(expression);
+                    final var holder = known == null ? null : numbering.holder(known);
+                    if (holder != null) {
+                        instructions.set(idx, Instruction.createMov(result, holder));
+                        numbering.assign(result, known);
+                    } else {
+                        final var number = known != null ? known : numbering.newNumber();
+                        numbering.expressions.put(expression, number);
+                        instructions.set(idx, create(kind, result, lhs, rhs));
+                        numbering.assign(result, number);
+                    }
+                }
+                case RET -> instructions.set(idx, Instruction.createRet(numbering.canonical(instruction.getReturnValue())));
+                default -> throw new RuntimeException("Unknown instruction kind: " + kind);
+            }
+        }
+        return this;
+    }
+
+    private final List<Instruction> instructions;
+
+    /**
+     * 活跃变量分析的结果
+     *
+     * @param useful    各指令是否影响返回值
+     * @param deadAfter 各指令的参数在该指令之后是否不再被任何指令使用, 第 k 位对应第 k 个参数
+     */
+    private record Liveness(boolean[] useful, int[] deadAfter) {
+    }
+
+    /**
+     * 倒序扫描的活跃变量分析
+     * <br>
+     * 只有最后一条 RET 的参数在程序结束时活跃. 扫描中维护活跃变量集合, 结果不活跃的指令与之前的 RET 不影响返回值,
+     * 它们的参数不加入集合, 因此一趟扫描就能删除整条只为死存储服务的计算链.
+     * <br>
+     * deadAfter 则按所有指令的使用计算: 合并复制时即使保留了无用的指令, 它们读取的变量也仍然已被赋值.
+     */
+    private Liveness analyzeLiveness() {
+        final var useful = new boolean[instructions.size()];
+        final var deadAfter = new int[instructions.size()];
+
+        var last = instructions.size() - 1;
+        while (last >= 0 && !instructions.get(last).getKind().isReturn()) {
+            last--;
+        }
+
+        final var live = new HashSet<IRVariable>();
+        final var used = new HashSet<IRVariable>();
+        for (int idx = instructions.size() - 1; idx >= 0; idx--) {
+            final var instruction = instructions.get(idx);
+            final var result = instruction.getKind().isReturn() ? null : instruction.getResult();
+            final var operands = instruction.getOperands();
+
+            used.remove(result);
+            for (int pos = 0; pos < operands.size(); pos++) {
+                if (operands.get(pos) instanceof IRVariable variable && !used.contains(variable)) {
+                    deadAfter[idx] |= 1 << pos;
+                }
+            }
+            for (final var operand : operands) {
+                if (operand instanceof IRVariable variable) {
+                    used.add(variable);
+                }
+            }
+
+            if (idx > last || idx < last && (result == null || !live.remove(result))) {
+                continue;
+            }
+            useful[idx] = true;
+            for (final var operand : operands) {
+                if (operand instanceof IRVariable variable) {
+                    live.add(variable);
+                }
+            }
+        }
+        return new Liveness(useful, deadAfter);
+    }
+
+    /**
+     * 把 {@code t = ...; ...; x = t} 合并为 {@code x = ...; ...}, 条件见 {@link #propagateCopies()}
+     */
+    private void coalesceCopies() {
+        final var liveness = analyzeLiveness();
+        // 各变量最近一次被赋值, 以及最近一次被读取或赋值的指令下标
+        final var lastDef = new HashMap<IRVariable, Integer>();
+        final var lastTouch = new HashMap<IRVariable, Integer>();
+        final var removed = new boolean[instructions.size()];
+        for (int idx = 0; idx < instructions.size(); idx++) {
+            final var instruction = instructions.get(idx);
+            final var kind = instruction.getKind();
+            if (kind.isUnary() && liveness.useful()[idx] && (liveness.deadAfter()[idx] & 1) != 0
+                && instruction.getFrom() instanceof IRVariable from) {
+                final var result = instruction.getResult();
+                final var def = lastDef.get(from);
+                if (!from.equals(result) && def != null && lastTouch.getOrDefault(result, -1) <= def) {
+                    final var definition = instructions.get(def);
+                    instructions.set(def, rebuild(definition.getKind(), result, definition.getOperands()));
+                    for (int use = def + 1; use < idx; use++) {
+                        if (!removed[use]) {
+                            instructions.set(use, rename(instructions.get(use), from, result));
+                        }
+                    }
+                    removed[idx] = true;
+                    lastDef.remove(from);
+                    lastDef.put(result, def);
+                    lastTouch.put(result, idx);
+                    continue;
+                }
+            }
+
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    lastTouch.put(variable, idx);
+                }
+            }
+            if (!kind.isReturn()) {
+                lastDef.put(instruction.getResult(), idx);
+                lastTouch.put(instruction.getResult(), idx);
+            }
+        }
+
+        final var kept = new ArrayList<Instruction>();
+        for (int idx = 0; idx < instructions.size(); idx++) {
+            if (!removed[idx]) {
+                kept.add(instructions.get(idx));
+            }
+        }
+        instructions.clear();
+        instructions.addAll(kept);
+    }
+
+    /**
+     * @return 把参数中的 from 替换为 to 后的指令
+     */
+    private static Instruction rename(Instruction instruction, IRVariable from, IRVariable to) {
+        final var operands = new ArrayList<IRValue>(instruction.getOperands());
+        if (!operands.contains(from)) {
+            return instruction;
+        }
+        operands.replaceAll(operand -> operand.equals(from) ? to : operand);
+        return rebuild(instruction.getKind(), instruction.getKind().isReturn() ? null : instruction.getResult(), operands);
+    }
+
+    private static Instruction rebuild(InstructionKind kind, IRVariable result, List<IRValue> operands) {
+        return switch (kind) {
+            case MOV -> Instruction.createMov(result, operands.get(0));
+            case RET -> Instruction.createRet(operands.get(0));
+            default -> create(kind, result, operands.get(0), operands.get(1));
+        };
+    }
+
+    /**
+     * 值编号中的运算, 参数是值的编号
+     */
+    private record Expression(InstructionKind kind, int lhs, int rhs) {
+    }
+
+    /**
+     * 局部值编号的状态
+     */
+    private static class ValueNumbering {
+        final Map<Expression, Integer> expressions = new HashMap<>();
+
+        /**
+         * @return 值的编号, 未赋值就被使用的变量会得到一个新编号
+         */
+        int numberOf(IRValue value) {
+            if (value instanceof IRImmediate immediate) {
+                final var number = constants.get(immediate.getValue());
+                if (number != null) {
+                    return number;
+                }
+                final var created = newNumber();
+                constants.put(immediate.getValue(), created);
+                return created;
+            } else if (value instanceof IRVariable variable) {
+                final var number = variables.get(variable);
+                if (number != null) {
+                    return number;
+                }
+                final var created = newNumber();
+                assign(variable, created);
+                return created;
+            } else {
+                throw new RuntimeException("Unknown IR value type");
+            }
+        }
+
+        /**
+         * @return 变量改写为持有同一值的首选变量, 立即数不变
+         */
+        IRValue canonical(IRValue value) {
+            if (value instanceof IRVariable variable) {
+                final var holder = holder(numberOf(variable));
+                return holder != null ? holder : variable;
+            }
+            return value;
+        }
+
+        /**
+         * @return 当前持有该值的首选变量, 没有时返回 null
+         */
+        IRVariable holder(int number) {
+            final var members = holders.get(number);
+            if (members == null || members.isEmpty()) {
+                return null;
+            }
+            for (final var member : members) {
+                if (member.isNamed()) {
+                    return member;
+                }
+            }
+            return members.iterator().next();
+        }
+
+        void assign(IRVariable variable, int number) {
+            final var old = variables.put(variable, number);
+            if (old != null) {
+                holders.get(old).remove(variable);
+            }
+            holders.computeIfAbsent(number, n -> new LinkedHashSet<>()).add(variable);
+        }
+
+        int newNumber() {
+            return count++;
+        }
+
+        private final Map<Integer, Integer> constants = new HashMap<>();
+        private final Map<IRVariable, Integer> variables = new HashMap<>();
+        private final Map<Integer, Set<IRVariable>> holders = new HashMap<>();
+        private int count = 0;
+    }
+
+    /**
+     * @return 立即数的值, 或变量当前的常量值; 不是常量时返回 null
+     */
+    private static Integer constantOf(IRValue value, Map<IRVariable, Integer> constants) {
+        if (value instanceof IRImmediate immediate) {
+            return immediate.getValue();
+        } else if (value instanceof IRVariable variable) {
+            return constants.get(variable);
+        } else {
+            throw new RuntimeException("Unknown IR value type");
+        }
+    }
+
+    private static Instruction create(InstructionKind kind, IRVariable result, IRValue lhs, IRValue rhs) {
+        return switch (kind) {
+            case ADD -> Instruction.createAdd(result, lhs, rhs);
+            case SUB -> Instruction.createSub(result, lhs, rhs);
+            case MUL -> Instruction.createMul(result, lhs, rhs);
+            default -> throw new RuntimeException("Not a binary instruction: " + kind);
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package cn.edu.hitsz.compiler.ir;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * IR 中的 "变量"
  * <br>
@@ -10,6 +12,8 @@ package cn.edu.hitsz.compiler.ir;
  */
 public class IRVariable implements IRValue {
     /**
+     * 传入的名字若是符号表中的驻留字符串, 同一次编译中同名变量的比较便只需比较引用.
+     *
      * @param name 源语言中变量的名字
      * @return 一个对应于源语言中具体变量的 IRVariable
      */
@@ -18,10 +22,23 @@ public class IRVariable implements IRValue {
     }
 
     /**
+     * 可能有多个编译同时进行, 编号由原子计数器分配, 不同编译得到的临时变量也不会重名
+     *
      * @return 一个对应于源语言中的临时变量的新 IRVariable
      */
     public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+        return new IRVariable("$" + count.getAndIncrement());
+    }
+
+    /**
+     * 按编号取得临时变量, 用于对已生成的 IR 重新编号.
+     * 编号小于 {@link #temp()} 已分配的数量时, 不会与之后由 {@link #temp()} 产生的临时变量重名.
+     *
+     * @param index 临时变量的编号
+     * @return 名为 "$index" 的临时变量
+     */
+    public static IRVariable temp(int index) {
+        return new IRVariable("$" + index);
     }
 
     public String getName() {
@@ -56,5 +73,5 @@ public class IRVariable implements IRValue {
     }
 
     private final String name;
-    private static int count = 0;
+    private static final AtomicInteger count = new AtomicInteger();
 }
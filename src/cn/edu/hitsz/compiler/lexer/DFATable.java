@@ -0,0 +1,263 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 词法分析自动机的表驱动形式
+ * <br>
+ * 将实验指导书中的状态转移图 (状态 0-31) 预先展开为稠密的 {@code int[状态][字符类]} 转移表, 辅以 128 项的 ASCII 字符分类表与终态表,
+ * 使词法分析在逐字符的过程中只做数组访问, 不再有字符装箱与集合查找.
+ * <br>
+ * 与状态转移图一致, 标识符, 整数常量, {@code *} 与 {@code =} 的终态需要多读一个字符才能确定, 确定之后要把这个字符退回去,
+ * 这类终态由 retract 表标记. 输入结束被视为一个单独的字符类, 以便在文件末尾也能正确地接受最后一个词法单元.
+ * <br>
+ * 为了最长匹配, fallback 表记录了 "若在此状态停下可以接受的终态": 之后的字符导致出错时, 词法分析退回到最近一个这样的位置并接受,
+ * 而不是丢弃已经读入的整个词素.
+ * <br>
+ * 状态 0 总是初态, 转移回状态 0 意味着跳过了一个无用字符. 除手写的自动机外, 该表也可以由 {@link LexerGenerator} 从正则描述中生成.
+ */
+public final class DFATable {
+    /**
+     * 转移表中代表出错 (没有对应转移) 的状态
+     */
+    public static final int ERROR = -1;
+
+    //============================== 字符类 ==============================
+    public static final int OTHER = 0;
+    public static final int LETTER = 1;
+    public static final int DIGIT = 2;
+    public static final int BLANK = 3;
+    public static final int STAR = 4;
+    public static final int EQUAL = 5;
+    public static final int LEFT_PAREN = 6;
+    public static final int RIGHT_PAREN = 7;
+    public static final int SEMICOLON = 8;
+    public static final int PLUS = 9;
+    public static final int MINUS = 10;
+    public static final int SLASH = 11;
+    public static final int END = 12;
+    public static final int CLASS_COUNT = 13;
+
+    /**
+     * @return 由实验指导书中的状态转移图构造的表
+     */
+    public static DFATable handWritten() {
+        if (handWrittenInstance == null) {
+            handWrittenInstance = buildHandWritten();
+        }
+
+        return handWrittenInstance;
+    }
+
+    /**
+     * @param c 字符的码点
+     * @return 该字符所属的字符类
+     */
+    public int classOf(int c) {
+        if (c < 128) {
+            return asciiClass[c];
+        }
+
+        // 非 ASCII 字符极少出现, 走慢速路径即可
+        if (Character.isLetter(c)) {
+            return nonAsciiLetterClass;
+        } else if (Character.isDigit(c)) {
+            return nonAsciiDigitClass;
+        } else {
+            return nonAsciiOtherClass;
+        }
+    }
+
+    /**
+     * @return 代表输入结束的字符类
+     */
+    public int endClass() {
+        return endClass;
+    }
+
+    /**
+     * @return 字符类数量
+     */
+    public int classCount() {
+        return endClass + 1;
+    }
+
+    /**
+     * 判断该字符类是否总是处在 token 的边界上: 在初态读到它时要么跳过, 要么立即接受一个单字符 token;
+     * 在其它状态读到它时要么出错, 要么退回它并结束当前 token. 这样的字符之后开始的扫描必然从初态开始, 可以用来切分源代码.
+     *
+     * @param charClass 字符类
+     * @return 该字符类是否总是处在 token 的边界上
+     */
+    public boolean isBoundary(int charClass) {
+        final var fromStart = transition[0][charClass];
+        if (fromStart != 0 && (fromStart == ERROR || !accept[fromStart] || retract[fromStart])) {
+            return false;
+        }
+
+        for (int state = 1; state < transition.length; state++) {
+            final var next = transition[state][charClass];
+            if (next != ERROR && !(accept[next] && retract[next])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 状态数量
+     */
+    public int stateCount() {
+        return transition.length;
+    }
+
+    /**
+     * 单个 ASCII 字符到字符类的映射, 下标为字符本身
+     */
+    final byte[] asciiClass;
+
+    /**
+     * 转移表, 下标为 [当前状态][字符类], 值为下一个状态或 {@link #ERROR}
+     */
+    final int[][] transition;
+
+    /**
+     * 该状态是否为终态
+     */
+    final boolean[] accept;
+
+    /**
+     * 到达该终态时是否要退回最后读入的字符
+     */
+    final boolean[] retract;
+
+    /**
+     * 终态所识别出的词法单元类型的标识符, 非终态为 null
+     */
+    final String[] acceptKind;
+
+    /**
+     * 在该状态停下时可以接受的 (需要退回字符的) 终态, 没有时为 {@link #ERROR}
+     */
+    final int[] fallback;
+
+    /**
+     * 非 ASCII 的字母, 数字与其它字符所属的字符类
+     */
+    private final int nonAsciiLetterClass;
+    private final int nonAsciiDigitClass;
+    private final int nonAsciiOtherClass;
+
+    /**
+     * 代表输入结束的字符类, 总是编号最大的字符类
+     */
+    private final int endClass;
+
+    DFATable(byte[] asciiClass, int[][] transition, boolean[] accept, boolean[] retract, String[] acceptKind, int[] fallback,
+             int nonAsciiLetterClass, int nonAsciiDigitClass, int nonAsciiOtherClass, int endClass) {
+        this.asciiClass = asciiClass;
+        this.transition = transition;
+        this.accept = accept;
+        this.retract = retract;
+        this.acceptKind = acceptKind;
+        this.fallback = fallback;
+        this.nonAsciiLetterClass = nonAsciiLetterClass;
+        this.nonAsciiDigitClass = nonAsciiDigitClass;
+        this.nonAsciiOtherClass = nonAsciiOtherClass;
+        this.endClass = endClass;
+    }
+
+    private static DFATable handWrittenInstance = null;
+
+    private static DFATable buildHandWritten() {
+        final var asciiClass = new byte[128];
+        for (char c = 0; c < 128; c++) {
+            asciiClass[c] = (byte) switch (c) {
+                case ' ', '\n', '\t', '\r' -> BLANK;
+                case '*' -> STAR;
+                case '=' -> EQUAL;
+                case '(' -> LEFT_PAREN;
+                case ')' -> RIGHT_PAREN;
+                case ';' -> SEMICOLON;
+                case '+' -> PLUS;
+                case '-' -> MINUS;
+                case '/' -> SLASH;
+                default -> {
+                    if (Character.isLetter(c)) yield LETTER;
+                    else if (Character.isDigit(c)) yield DIGIT;
+                    else yield OTHER;
+                }
+            };
+        }
+
+        final var stateCount = 32;
+        final var transition = new int[stateCount][CLASS_COUNT];
+        for (final var row : transition) {
+            Arrays.fill(row, ERROR);
+        }
+
+        // 状态 0: 初态, 空白字符停留在初态
+        transition[0][BLANK] = 0;
+        transition[0][LETTER] = 14;
+        transition[0][DIGIT] = 16;
+        transition[0][STAR] = 18;
+        transition[0][EQUAL] = 21;
+        transition[0][LEFT_PAREN] = 26;
+        transition[0][RIGHT_PAREN] = 27;
+        transition[0][SEMICOLON] = 28;
+        transition[0][PLUS] = 29;
+        transition[0][MINUS] = 30;
+        transition[0][SLASH] = 31;
+
+        // 状态 14: 标识符, 遇到非字母数字进入 15
+        Arrays.fill(transition[14], 15);
+        transition[14][LETTER] = 14;
+        transition[14][DIGIT] = 14;
+
+        // 状态 16: 整数常量, 遇到非数字进入 17
+        Arrays.fill(transition[16], 17);
+        transition[16][DIGIT] = 16;
+
+        // 状态 18: *, 再遇到 * 进入 19, 否则进入 20
+        Arrays.fill(transition[18], 20);
+        transition[18][STAR] = 19;
+
+        // 状态 21: =, 再遇到 = 进入 22, 否则进入 23
+        Arrays.fill(transition[21], 23);
+        transition[21][EQUAL] = 22;
+
+        final var accept = new boolean[stateCount];
+        final var retract = new boolean[stateCount];
+        final var acceptKind = new String[stateCount];
+        final Object[][] finals = {
+            {15, "id", true},
+            {17, "IntConst", true},
+            {19, "**", false},
+            {20, "*", true},
+            {22, "==", false},
+            {23, "=", true},
+            {26, "(", false},
+            {27, ")", false},
+            {28, "Semicolon", false},
+            {29, "+", false},
+            {30, "-", false},
+            {31, "/", false},
+        };
+        for (final var row : finals) {
+            final var state = (int) row[0];
+            accept[state] = true;
+            acceptKind[state] = (String) row[1];
+            retract[state] = (boolean) row[2];
+        }
+
+        // 标识符, 整数常量, * 与 = 的中间状态都可以直接接受
+        final var fallback = new int[stateCount];
+        Arrays.fill(fallback, ERROR);
+        fallback[14] = 15;
+        fallback[16] = 17;
+        fallback[18] = 20;
+        fallback[21] = 23;
+
+        return new DFATable(asciiClass, transition, accept, retract, acceptKind, fallback, LETTER, DIGIT, OTHER, END);
+    }
+}
@@ -0,0 +1,89 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 关键字的完美哈希表
+ * <br>
+ * 哈希值只取决于词素的长度与首, 中, 尾三个字节, 因此判断一个标识符是不是关键字只需要 O(1) 的计算与至多一次字节比较, 不必先构造字符串.
+ * 构造时搜索一个使所有关键字互不冲突的种子, 所以查找时不需要处理冲突.
+ */
+public final class KeywordTable {
+    /**
+     * @param keywords 关键字的 TokenKind, 其标识符即为关键字文本
+     */
+    public KeywordTable(List<TokenKind> keywords) {
+        var size = Integer.highestOneBit(Math.max(1, keywords.size()) * 2 - 1) * 2;
+        while (size <= MAX_SIZE) {
+            for (int seed = 1; seed < SEED_TRIES; seed++) {
+                if (tryBuild(keywords, size, seed)) {
+                    return;
+                }
+            }
+            size *= 2;
+        }
+
+        // 长度与首中尾字节都相同的两个关键字无论如何都会冲突
+        throw new RuntimeException("Can not build perfect hash for keywords " + keywords);
+    }
+
+    /**
+     * @param source 源代码
+     * @param begin  词素的起始位置
+     * @param end    词素的结束位置 (不含)
+     * @return 词素对应的关键字类型, 不是关键字时返回 null
+     */
+    public TokenKind lookup(ByteBuffer source, int begin, int end) {
+        final var length = end - begin;
+        if (length <= 0) {
+            return null;
+        }
+
+        final var slot = hash(length, source.get(begin), source.get(begin + length / 2), source.get(end - 1), seed) & mask;
+        final var bytes = keywordBytes[slot];
+        if (bytes == null || bytes.length != length) {
+            return null;
+        }
+        for (int idx = 0; idx < length; idx++) {
+            if (bytes[idx] != source.get(begin + idx)) {
+                return null;
+            }
+        }
+        return kinds[slot];
+    }
+
+    private static final int SEED_TRIES = 1 << 12;
+    private static final int MAX_SIZE = 1 << 16;
+
+    private byte[][] keywordBytes;
+    private TokenKind[] kinds;
+    private int seed;
+    private int mask;
+
+    private boolean tryBuild(List<TokenKind> keywords, int size, int seed) {
+        final var keywordBytes = new byte[size][];
+        final var kinds = new TokenKind[size];
+        for (final var kind : keywords) {
+            final var bytes = kind.getIdentifier().getBytes(StandardCharsets.UTF_8);
+            final var slot = hash(bytes.length, bytes[0], bytes[bytes.length / 2], bytes[bytes.length - 1], seed) & (size - 1);
+            if (keywordBytes[slot] != null) {
+                return false;
+            }
+            keywordBytes[slot] = bytes;
+            kinds[slot] = kind;
+        }
+
+        this.keywordBytes = keywordBytes;
+        this.kinds = kinds;
+        this.seed = seed;
+        this.mask = size - 1;
+        return true;
+    }
+
+    private static int hash(int length, byte first, byte middle, byte last, int seed) {
+        final var hash = (length * 0x9E3779B1) ^ (first * 0x85EBCA6B) ^ (middle * 0x27D4EB2F) ^ (last * 0xC2B2AE35) ^ seed;
+        return (hash ^ (hash >>> 15)) * 0x2C1B3C6D >>> 7;
+    }
+}
@@ -0,0 +1,658 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.*;
+
+/**
+ * 根据词法描述文件 (lexer_spec.txt) 构造词法自动机.
+ * <br>
+ * 描述文件的每一行形如 {@code IntConst [0-9]+}, 空格前为码点文件中的 TokenKind 标识符, 空格后为该类词法单元的正则表达式.
+ * 当一个词素同时匹配多个正则时, 靠前的行优先, 因此关键字应写在标识符之前.
+ * <br>
+ * 构造过程为: Thompson 构造 NFA, 子集构造得到 DFA, Hopcroft 算法最小化, 最后转换为 {@link DFATable} 供 LexicalAnalyzer 在运行期使用.
+ * 新增运算符只需在描述文件中加一行, 不必再修改词法分析器的代码.
+ * <br>
+ * 正则表达式支持连接, {@code |}, {@code *}, {@code +}, {@code ?}, 括号, 字符集 {@code [a-z0-9]} 与 {@code \} 转义, 只允许出现 ASCII 字符.
+ * 此外 {@code \l} 匹配任意字母, {@code \d} 匹配任意数字, 按 {@link Character#isLetter} 与 {@link Character#isDigit} 判断,
+ * 因此包含非 ASCII 的码点; 二者也可以出现在字符集中, 如 {@code [\l\d]}.
+ * 空格, 制表符, 回车与换行符总是被当作无用字符跳过.
+ */
+public class LexerGenerator {
+    public LexerGenerator() {
+        this(FilePathConfig.LEXER_SPEC_PATH);
+    }
+
+    /**
+     * @param path 词法描述文件路径
+     */
+    public LexerGenerator(String path) {
+        for (final var line : FileUtils.readLines(path)) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            final var words = line.split(" ", 2);
+            final var kind = words[0];
+            if (!TokenKind.isAllowed(kind)) {
+                throw new RuntimeException("Unknown token kind in lexer spec: " + kind);
+            }
+
+            kinds.add(kind);
+            patterns.add(words[1]);
+        }
+    }
+
+    /**
+     * 主体方法
+     */
+    public void run() {
+        constructNFA();
+        partitionCharClasses();
+        constructDFA();
+        minimizeDFA();
+        genTable();
+    }
+
+    /**
+     * @return 构造出的词法自动机
+     */
+    public DFATable getTable() {
+        return table;
+    }
+
+    private final List<String> kinds = new ArrayList<>();
+    private final List<String> patterns = new ArrayList<>();
+    private DFATable table;
+
+    private static final int ASCII_SIZE = 128;
+    // 非 ASCII 的字母与数字在字符集中以 ASCII 之后的两个位置表示
+    private static final int NON_ASCII_LETTER = ASCII_SIZE;
+    private static final int NON_ASCII_DIGIT = ASCII_SIZE + 1;
+    private static final int CHAR_SET_SIZE = ASCII_SIZE + 2;
+    private static final String BLANKS = " \t\n\r";
+
+
+    //============================== Thompson 构造 ==============================
+
+    /**
+     * NFA 的一个片段, 只有一个入口与一个出口
+     *
+     * @param begin 入口状态
+     * @param end   出口状态
+     */
+    private record Fragment(int begin, int end) {
+    }
+
+    // Thompson 构造出的每个 NFA 状态至多有一条字符边, 因此用平行的列表存储
+    private final List<List<Integer>> epsilon = new ArrayList<>();
+    private final List<BitSet> edgeChars = new ArrayList<>();
+    private final List<Integer> edgeTarget = new ArrayList<>();
+    // NFA 的终态对应第几条描述, 非终态为 -1
+    private final List<Integer> acceptPattern = new ArrayList<>();
+    private int nfaStart;
+
+    private int newNFAState() {
+        epsilon.add(new ArrayList<>());
+        edgeChars.add(null);
+        edgeTarget.add(-1);
+        acceptPattern.add(-1);
+        return epsilon.size() - 1;
+    }
+
+    private void constructNFA() {
+        nfaStart = newNFAState();
+        for (int idx = 0; idx < patterns.size(); idx++) {
+            final var parser = new RegexParser(patterns.get(idx));
+            final var fragment = parser.parse();
+            if (nullable(fragment)) {
+                throw new RuntimeException("Pattern of %s matches empty string".formatted(kinds.get(idx)));
+            }
+
+            epsilon.get(nfaStart).add(fragment.begin());
+            acceptPattern.set(fragment.end(), idx);
+        }
+    }
+
+    /**
+     * @return 片段是否能匹配空串, 即入口的 ε 闭包中是否包含出口
+     */
+    private boolean nullable(Fragment fragment) {
+        final var start = new BitSet();
+        start.set(fragment.begin());
+        return closure(start).get(fragment.end());
+    }
+
+    /**
+     * 递归下降的正则表达式解析器, 边解析边构造 NFA 片段
+     */
+    private class RegexParser {
+        RegexParser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Fragment parse() {
+            final var result = alternation();
+            if (pos != pattern.length()) {
+                throw error("unexpected '" + pattern.charAt(pos) + "'");
+            }
+            return result;
+        }
+
+        private final String pattern;
+        private int pos = 0;
+
+        // alternation := concat ('|' concat)*
+        private Fragment alternation() {
+            var result = concatenation();
+            while (peek('|')) {
+                pos++;
+                final var rhs = concatenation();
+                final var begin = newNFAState();
+                final var end = newNFAState();
+                epsilon.get(begin).add(result.begin());
+                epsilon.get(begin).add(rhs.begin());
+                epsilon.get(result.end()).add(end);
+                epsilon.get(rhs.end()).add(end);
+                result = new Fragment(begin, end);
+            }
+            return result;
+        }
+
+        // concat := repeat+
+        private Fragment concatenation() {
+            if (pos == pattern.length() || peek('|') || peek(')')) {
+                throw error("empty expression");
+            }
+
+            var result = repetition();
+            while (pos < pattern.length() && !peek('|') && !peek(')')) {
+                final var next = repetition();
+                epsilon.get(result.end()).add(next.begin());
+                result = new Fragment(result.begin(), next.end());
+            }
+            return result;
+        }
+
+        // repeat := atom ('*' | '+' | '?')*
+        private Fragment repetition() {
+            var result = atom();
+            while (peek('*') || peek('+') || peek('?')) {
+                final var op = pattern.charAt(pos++);
+                final var begin = newNFAState();
+                final var end = newNFAState();
+                epsilon.get(begin).add(result.begin());
+                epsilon.get(result.end()).add(end);
+                if (op != '+') {
+                    // 可以跳过
+                    epsilon.get(begin).add(end);
+                }
+                if (op != '?') {
+                    // 可以重复
+                    epsilon.get(result.end()).add(result.begin());
+                }
+                result = new Fragment(begin, end);
+            }
+            return result;
+        }
+
+        // atom := '(' alternation ')' | '[' set ']' | char
+        private Fragment atom() {
+            if (peek('(')) {
+                pos++;
+                final var result = alternation();
+                expect(')');
+                return result;
+            }
+
+            final var chars = new BitSet(CHAR_SET_SIZE);
+            if (peek('[')) {
+                pos++;
+                while (!peek(']')) {
+                    if (unicodeClass(chars)) {
+                        continue;
+                    }
+                    final var from = literal();
+                    if (peek('-') && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                        pos++;
+                        final var to = literal();
+                        chars.set(from, to + 1);
+                    } else {
+                        chars.set(from);
+                    }
+                }
+                expect(']');
+            } else if (!unicodeClass(chars)) {
+                chars.set(literal());
+            }
+
+            final var begin = newNFAState();
+            final var end = newNFAState();
+            edgeChars.set(begin, chars);
+            edgeTarget.set(begin, end);
+            return new Fragment(begin, end);
+        }
+
+        /**
+         * 若当前位置是 {@code \l} 或 {@code \d}, 则把它匹配的字符加入 chars
+         *
+         * @return 是否读入了 {@code \l} 或 {@code \d}
+         */
+        private boolean unicodeClass(BitSet chars) {
+            if (!peek('\\') || pos + 1 == pattern.length()) {
+                return false;
+            }
+            switch (pattern.charAt(pos + 1)) {
+                case 'l' -> {
+                    chars.set('a', 'z' + 1);
+                    chars.set('A', 'Z' + 1);
+                    chars.set(NON_ASCII_LETTER);
+                }
+                case 'd' -> {
+                    chars.set('0', '9' + 1);
+                    chars.set(NON_ASCII_DIGIT);
+                }
+                default -> {
+                    return false;
+                }
+            }
+            pos += 2;
+            return true;
+        }
+
+        private char literal() {
+            if (pos == pattern.length()) {
+                throw error("unexpected end");
+            }
+
+            var c = pattern.charAt(pos++);
+            if (c == '\\') {
+                if (pos == pattern.length()) {
+                    throw error("dangling escape");
+                }
+                c = pattern.charAt(pos++);
+            }
+            if (c >= ASCII_SIZE) {
+                throw error("non-ASCII character");
+            }
+            return c;
+        }
+
+        private boolean peek(char c) {
+            return pos < pattern.length() && pattern.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("expect '" + c + "'");
+            }
+            pos++;
+        }
+
+        private RuntimeException error(String message) {
+            return new RuntimeException("Illegal pattern %s at %d: %s".formatted(pattern, pos, message));
+        }
+    }
+
+
+    //============================== 字符类划分 ==============================
+
+    // 每个 ASCII 字符所属的字符类
+    private final byte[] asciiClass = new byte[ASCII_SIZE];
+    // 每个 NFA 状态的字符边能接受的字符类
+    private final List<BitSet> edgeClasses = new ArrayList<>();
+    private int nonAsciiLetterClass;
+    private int nonAsciiDigitClass;
+    private int nonAsciiOtherClass;
+    private int endClass;
+
+    /**
+     * 将 ASCII 字符与非 ASCII 的字母, 数字按其在所有字符边上的出现情况划分为等价类. 同一类中的字符在自动机中不可区分, 转移表只需为每一类保留一列.
+     * 其余非 ASCII 字符不出现在任何字符边上, 单独成类
+     */
+    private void partitionCharClasses() {
+        final var distinctSets = new ArrayList<BitSet>();
+        for (final var chars : edgeChars) {
+            if (chars != null && !distinctSets.contains(chars)) {
+                distinctSets.add(chars);
+            }
+        }
+
+        // 以字符在各个字符集中的出现情况作为签名, 签名相同的字符属于同一类
+        final var signatures = new LinkedHashMap<BitSet, Integer>();
+        final var charClass = new int[CHAR_SET_SIZE];
+        for (int c = 0; c < CHAR_SET_SIZE; c++) {
+            final var signature = new BitSet();
+            for (int idx = 0; idx < distinctSets.size(); idx++) {
+                if (distinctSets.get(idx).get(c)) {
+                    signature.set(idx);
+                }
+            }
+            // 空白字符总是单独成类, 以便在初态中跳过它们
+            final var blankIndex = BLANKS.indexOf(c);
+            if (blankIndex >= 0) {
+                signature.set(distinctSets.size() + blankIndex);
+            }
+
+            charClass[c] = signatures.computeIfAbsent(signature, key -> signatures.size());
+        }
+
+        for (int c = 0; c < ASCII_SIZE; c++) {
+            asciiClass[c] = (byte) charClass[c];
+        }
+        nonAsciiLetterClass = charClass[NON_ASCII_LETTER];
+        nonAsciiDigitClass = charClass[NON_ASCII_DIGIT];
+        nonAsciiOtherClass = signatures.size();
+        endClass = nonAsciiOtherClass + 1;
+
+        for (final var chars : edgeChars) {
+            final var classes = new BitSet();
+            if (chars != null) {
+                chars.stream().forEach(c -> classes.set(charClass[c]));
+            }
+            edgeClasses.add(classes);
+        }
+    }
+
+
+    //============================== 子集构造 ==============================
+
+    // DFA 的转移, 下标为 [状态][字符类], 无转移为 DFATable.ERROR
+    private final List<int[]> dfaTransition = new ArrayList<>();
+    // DFA 状态接受的描述编号, 非终态为 -1
+    private final List<Integer> dfaAccept = new ArrayList<>();
+
+    private BitSet closure(BitSet states) {
+        final var result = (BitSet) states.clone();
+        final var unexpanded = new ArrayDeque<Integer>();
+        states.stream().forEach(unexpanded::add);
+        while (!unexpanded.isEmpty()) {
+            for (final var next : epsilon.get(unexpanded.pollFirst())) {
+                if (!result.get(next)) {
+                    result.set(next);
+                    unexpanded.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void constructDFA() {
+        final var classCount = endClass + 1;
+        final var belongTo = new HashMap<BitSet, Integer>();
+        final var including = new ArrayList<BitSet>();
+
+        final var init = new BitSet();
+        init.set(nfaStart);
+        final var initClosure = closure(init);
+        belongTo.put(initClosure, 0);
+        including.add(initClosure);
+
+        for (int current = 0; current < including.size(); current++) {
+            final var nfaStates = including.get(current);
+            final var row = new int[classCount];
+            Arrays.fill(row, DFATable.ERROR);
+
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                final var move = new BitSet();
+                for (int state = nfaStates.nextSetBit(0); state >= 0; state = nfaStates.nextSetBit(state + 1)) {
+                    if (edgeClasses.get(state).get(charClass)) {
+                        move.set(edgeTarget.get(state));
+                    }
+                }
+                if (move.isEmpty()) {
+                    continue;
+                }
+
+                final var to = closure(move);
+                var index = belongTo.get(to);
+                if (index == null) {
+                    index = including.size();
+                    belongTo.put(to, index);
+                    including.add(to);
+                }
+                row[charClass] = index;
+            }
+
+            // 同时匹配多条描述时, 取最靠前的一条
+            var accepted = -1;
+            for (int state = nfaStates.nextSetBit(0); state >= 0; state = nfaStates.nextSetBit(state + 1)) {
+                final var pattern = acceptPattern.get(state);
+                if (pattern >= 0 && (accepted < 0 || pattern < accepted)) {
+                    accepted = pattern;
+                }
+            }
+
+            dfaTransition.add(row);
+            dfaAccept.add(accepted);
+        }
+    }
+
+
+    //============================== Hopcroft 最小化 ==============================
+
+    // 每个 DFA 状态所属的等价块, 死状态 (编号为 DFA 状态数) 也参与划分
+    private int[] blockOf;
+    private int blockCount;
+
+    private void minimizeDFA() {
+        final var stateCount = dfaTransition.size();
+        final var dead = stateCount;
+        final var classCount = endClass + 1;
+
+        // 补全为完全 DFA, 并建立反向转移
+        final var inverse = new ArrayList<List<List<Integer>>>();
+        for (int charClass = 0; charClass < classCount; charClass++) {
+            final var perState = new ArrayList<List<Integer>>();
+            for (int state = 0; state <= stateCount; state++) {
+                perState.add(new ArrayList<>());
+            }
+            inverse.add(perState);
+        }
+        for (int state = 0; state <= stateCount; state++) {
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                final var to = state == dead ? dead : dfaTransition.get(state)[charClass];
+                inverse.get(charClass).get(to == DFATable.ERROR ? dead : to).add(state);
+            }
+        }
+
+        // 初始划分: 非终态一块, 接受同一条描述的终态各一块
+        final var blocks = new ArrayList<BitSet>();
+        final var initial = new LinkedHashMap<Integer, BitSet>();
+        for (int state = 0; state <= stateCount; state++) {
+            final var accepted = state == dead ? -1 : dfaAccept.get(state);
+            initial.computeIfAbsent(accepted, key -> new BitSet()).set(state);
+        }
+        blocks.addAll(initial.values());
+
+        blockOf = new int[stateCount + 1];
+        for (int idx = 0; idx < blocks.size(); idx++) {
+            final var block = blocks.get(idx);
+            final var finalIdx = idx;
+            block.stream().forEach(state -> blockOf[state] = finalIdx);
+        }
+
+        final var waiting = new ArrayDeque<Integer>();
+        final var inWaiting = new ArrayList<Boolean>();
+        for (int idx = 0; idx < blocks.size(); idx++) {
+            waiting.add(idx);
+            inWaiting.add(true);
+        }
+
+        while (!waiting.isEmpty()) {
+            final var splitter = blocks.get(waiting.peekFirst()).stream().toArray();
+            inWaiting.set(waiting.pollFirst(), false);
+
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                // 所有经过该字符类能到达 splitter 的状态
+                final var predecessors = new BitSet();
+                for (final var state : splitter) {
+                    for (final var from : inverse.get(charClass).get(state)) {
+                        predecessors.set(from);
+                    }
+                }
+
+                // 按所属块分组后, 切开只有一部分状态落在 predecessors 中的块
+                final var touched = new LinkedHashSet<Integer>();
+                predecessors.stream().forEach(state -> touched.add(blockOf[state]));
+                for (final var blockIdx : touched) {
+                    final var block = blocks.get(blockIdx);
+                    final var inside = (BitSet) block.clone();
+                    inside.and(predecessors);
+                    if (inside.cardinality() == block.cardinality()) {
+                        continue;
+                    }
+
+                    final var outside = (BitSet) block.clone();
+                    outside.andNot(predecessors);
+                    final var newIdx = blocks.size();
+                    blocks.set(blockIdx, inside);
+                    blocks.add(outside);
+                    inWaiting.add(false);
+                    outside.stream().forEach(state -> blockOf[state] = newIdx);
+
+                    if (inWaiting.get(blockIdx)) {
+                        waiting.add(newIdx);
+                        inWaiting.set(newIdx, true);
+                    } else {
+                        final var smaller = inside.cardinality() <= outside.cardinality() ? blockIdx : newIdx;
+                        waiting.add(smaller);
+                        inWaiting.set(smaller, true);
+                    }
+                }
+            }
+        }
+
+        blockCount = blocks.size();
+    }
+
+
+    //============================== 生成转移表 ==============================
+
+    /**
+     * 将最小化的 DFA 转换为 LexicalAnalyzer 使用的表形式.
+     * <br>
+     * 最小 DFA 按最长匹配运行: 在某个终态上读到无法转移的字符时接受. 为此给每类词法单元增加一个需要退回字符的终态,
+     * 终态上所有原本无转移的字符类都转移到该状态. 没有任何出边的终态则直接接受, 不必多读一个字符.
+     * 有出边的终态在 fallback 表中记录对应的退回终态, 后续字符在非终态上出错时词法分析据此退回到最近一次可接受的位置.
+     * <br>
+     * 另外单独复制一份初态作为状态 0, 并在其上加入跳过空白字符的自环, 这样即使原初态可以被再次进入, 跳过空白也不会影响词素内部.
+     */
+    private void genTable() {
+        final var classCount = endClass + 1;
+        final var deadBlock = blockOf[dfaTransition.size()];
+
+        // 每个块的代表转移与接受情况
+        final var blockTransition = new int[blockCount][];
+        final var blockAccept = new int[blockCount];
+        for (int state = 0; state < dfaTransition.size(); state++) {
+            final var block = blockOf[state];
+            if (blockTransition[block] == null) {
+                final var row = new int[classCount];
+                for (int charClass = 0; charClass < classCount; charClass++) {
+                    final var to = dfaTransition.get(state)[charClass];
+                    final var toBlock = to == DFATable.ERROR ? deadBlock : blockOf[to];
+                    row[charClass] = toBlock == deadBlock ? DFATable.ERROR : toBlock;
+                }
+                blockTransition[block] = row;
+                blockAccept[block] = dfaAccept.get(state);
+            }
+        }
+
+        // 从初态出发按 BFS 顺序给块编号, 状态 0 留给初态的副本
+        final var newIndex = new int[blockCount];
+        Arrays.fill(newIndex, -1);
+        final var order = new ArrayList<Integer>();
+        final var unexpanded = new ArrayDeque<Integer>();
+        final var startRow = blockTransition[blockOf[0]];
+        for (final var to : startRow) {
+            if (to != DFATable.ERROR && newIndex[to] < 0) {
+                newIndex[to] = order.size() + 1;
+                order.add(to);
+                unexpanded.add(to);
+            }
+        }
+        while (!unexpanded.isEmpty()) {
+            for (final var to : blockTransition[unexpanded.pollFirst()]) {
+                if (to != DFATable.ERROR && newIndex[to] < 0) {
+                    newIndex[to] = order.size() + 1;
+                    order.add(to);
+                    unexpanded.add(to);
+                }
+            }
+        }
+
+        // 需要退回字符的终态, 每类词法单元一个, 排在最后
+        final var retractIndex = new int[patterns.size()];
+        Arrays.fill(retractIndex, -1);
+        var stateCount = order.size() + 1;
+        for (final var block : order) {
+            final var accepted = blockAccept[block];
+            if (accepted >= 0 && hasTransition(blockTransition[block]) && retractIndex[accepted] < 0) {
+                retractIndex[accepted] = stateCount++;
+            }
+        }
+
+        final var transition = new int[stateCount][classCount];
+        final var accept = new boolean[stateCount];
+        final var retract = new boolean[stateCount];
+        final var acceptKind = new String[stateCount];
+        final var fallback = new int[stateCount];
+        Arrays.fill(fallback, DFATable.ERROR);
+        for (final var row : transition) {
+            Arrays.fill(row, DFATable.ERROR);
+        }
+
+        for (int charClass = 0; charClass < classCount; charClass++) {
+            final var to = startRow[charClass];
+            transition[0][charClass] = to == DFATable.ERROR ? DFATable.ERROR : newIndex[to];
+        }
+        for (char c : BLANKS.toCharArray()) {
+            if (transition[0][asciiClass[c]] != DFATable.ERROR) {
+                throw new RuntimeException("Blank character can not begin a token");
+            }
+            transition[0][asciiClass[c]] = 0;
+        }
+
+        for (final var block : order) {
+            final var state = newIndex[block];
+            final var row = blockTransition[block];
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                transition[state][charClass] = row[charClass] == DFATable.ERROR ? DFATable.ERROR : newIndex[row[charClass]];
+            }
+
+            final var accepted = blockAccept[block];
+            if (accepted < 0) {
+                continue;
+            }
+            if (hasTransition(row)) {
+                fallback[state] = retractIndex[accepted];
+                for (int charClass = 0; charClass < classCount; charClass++) {
+                    if (transition[state][charClass] == DFATable.ERROR) {
+                        transition[state][charClass] = retractIndex[accepted];
+                    }
+                }
+            } else {
+                accept[state] = true;
+                acceptKind[state] = kinds.get(accepted);
+            }
+        }
+
+        for (int pattern = 0; pattern < patterns.size(); pattern++) {
+            final var state = retractIndex[pattern];
+            if (state >= 0) {
+                accept[state] = true;
+                retract[state] = true;
+                acceptKind[state] = kinds.get(pattern);
+            }
+        }
+
+        table = new DFATable(asciiClass, transition, accept, retract, acceptKind, fallback,
+            nonAsciiLetterClass, nonAsciiDigitClass, nonAsciiOtherClass, endClass);
+    }
+
+    private static boolean hasTransition(int[] row) {
+        return Arrays.stream(row).anyMatch(to -> to != DFATable.ERROR);
+    }
+}
@@ -1,10 +1,14 @@
 package cn.edu.hitsz.compiler.lexer;
 
-import cn.edu.hitsz.compiler.NotImplementedException;
+import cn.edu.hitsz.compiler.Diagnostic;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.StreamSupport;
 
 /**
@@ -17,20 +21,51 @@ import java.util.stream.StreamSupport;
  */
 public class LexicalAnalyzer {
     private final SymbolTable symbolTable;
-    private String codes;
-    private List<Token> tokens = new LinkedList<>();
+    /**
+     * 源代码的原始 UTF-8 字节, 通常是直接映射到内存的文件
+     */
+    private ByteBuffer codes;
+    private TokenBuffer tokens;
+
+    /**
+     * 分析过程中发现的词法错误, 出错的字符被跳过后分析会继续进行
+     */
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
 
     /**
-     * 存放所有的终态
+     * 表驱动的词法自动机
      */
-    private static final Set<Integer> finalStates = new HashSet<>(Arrays.asList(15, 17, 19, 20, 22, 23, 25, 26, 27, 28, 29, 30, 31));
+    private final DFATable table;
 
     /**
-     * 存放所有的无用符号
+     * 各终态对应的 token 类型, 下标为状态编号. 未在码点文件中出现的类型为 null
      */
-    private static final List<Character> uselessChar = Arrays.asList(' ', '\n', '\t');
+    private final TokenKind[] acceptKinds;
+    private final TokenKind idKind;
+    private final TokenKind intConstKind;
+    private final KeywordTable keywords;
+
     public LexicalAnalyzer(SymbolTable symbolTable) {
+        this(symbolTable, DFATable.handWritten());
+    }
+
+    /**
+     * @param symbolTable 符号表
+     * @param table       词法自动机, 可以由 {@link LexerGenerator} 生成
+     */
+    public LexicalAnalyzer(SymbolTable symbolTable, DFATable table) {
         this.symbolTable = symbolTable;
+        this.table = table;
+        this.acceptKinds = new TokenKind[table.stateCount()];
+        for (int state = 0; state < acceptKinds.length; state++) {
+            final var id = table.acceptKind[state];
+            if (id != null && TokenKind.isAllowed(id)) {
+                acceptKinds[state] = TokenKind.fromString(id);
+            }
+        }
+        this.idKind = TokenKind.fromString("id");
+        this.intConstKind = TokenKind.fromString("IntConst");
+        this.keywords = new KeywordTable(List.of(TokenKind.fromString("int"), TokenKind.fromString("return")));
     }
 
     /**
@@ -39,10 +74,21 @@ public class LexicalAnalyzer {
      * @param path 路径
      */
     public void loadFile(String path) {
-        // TODO: 词法分析前的缓冲区实现
-        // 可自由实现各类缓冲区
-        // 或直接采用完整读入方法
-        codes = FileUtils.readFile(path);
+        // 直接将文件映射到内存并在字节上做词法分析, 只有标识符与整数常量的文本才会被复制出来
+        codes = FileUtils.mapFile(path);
+        tokens = new TokenBuffer(codes, symbolTable);
+        diagnostics.clear();
+    }
+
+    /**
+     * 加载内存中的一段源代码, token 的位置相对于缓冲区的开头
+     *
+     * @param buffer 源代码缓冲区
+     */
+    public void loadBuffer(ByteBuffer buffer) {
+        codes = buffer;
+        tokens = new TokenBuffer(codes, symbolTable);
+        diagnostics.clear();
     }
 
     /**
@@ -50,117 +96,374 @@ public class LexicalAnalyzer {
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
-        // TODO: 自动机实现的词法分析过程
-        int slowPointer = 0, fastPointer = 0, length = codes.length();
-        int currentState = 0, nextState = 0;
-        char c;
-
-        boolean isLetter = false, isDigit = false, isUseless = false;
-
-        for(slowPointer=0; slowPointer<length; slowPointer++){
-            // 外层for循环用于遍历整个代码，即遍历每一个token
-            currentState = 0;
-            nextState = 0;
-            fastPointer = slowPointer;
-
-            while(!(finalStates.contains(currentState)) && (fastPointer<length)){
-                // 内层while循环用于遍历当前token的每一个字符，即找到当前token的位置，位于快慢指针之间
-                c = codes.charAt(fastPointer);
-                isLetter = Character.isLetter(c);
-                isDigit = Character.isDigit(c);
-                isUseless = uselessChar.contains(c);
-
-                // 实验指导书状态转移逻辑
-                nextState = switch (currentState){
-                    case 0 -> switch (c){
-                        case '*' -> 18;
-                        case '=' -> 21;
-                        case '(' -> 26;
-                        case ')' -> 27;
-                        case ';' -> 28;
-                        case '+' -> 29;
-                        case '-' -> 30;
-                        case '/' -> 31;
-                        default -> {
-                            if (isLetter) yield 14;
-                            else if (isDigit) yield 16;
-                            else if (isUseless) yield 0;
-                            else throw new NotImplementedException();
-                        }
-                    };
+        // token 只以类型与范围的形式存入 TokenBuffer, 不为每个 token 分配对象
+        final var scanner = new Scanner(0, codes.limit(), diagnostics);
+        while (scanner.advance()) {
+            final var begin = scanner.tokenBegin;
+            final var end = scanner.tokenEnd;
+            final var kind = resolveKind(scanner.tokenState, begin, end);
+            if (kind == idKind) {
+                tokens.add(kind, begin, end - begin, symbolTable.intern(codes, begin, end));
+            } else {
+                tokens.add(kind, begin, end - begin);
+            }
+        }
+        tokens.add(TokenKind.eof(), codes.limit(), 0);
+    }
 
-                    case 14 -> {
-                        if (isLetter || isDigit) yield 14;
-                        else yield 15;
-                    }
-                    case 16 -> {
-                        if (isDigit) yield 16;
-                        else yield 17;
+    /**
+     * 并行地执行词法分析, 结果与 {@link #run()} 完全相同.
+     * <br>
+     * 源代码在 token 边界处 (分号或换行之后, 见 {@link DFATable#isBoundary}) 被切分为若干段, 各段在线程池中独立分析,
+     * 随后按原顺序拼接 token. 各段不访问符号表, 拼接时再按原顺序驻留各个标识符, 因此符号表的内容与符号编号都不受调度顺序影响.
+     * 源代码较短时直接退化为顺序分析.
+     *
+     * @param pool 用于分析各段的线程池
+     */
+    public void runParallel(ForkJoinPool pool) {
+        final int length = codes.limit();
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, length / (pool.getParallelism() * 4));
+        if (length <= chunkSize) {
+            run();
+            return;
+        }
+
+        // 从每个期望的切分位置向后找到第一个 token 边界
+        final var chunkBegins = new ArrayList<Integer>();
+        chunkBegins.add(0);
+        int pos = chunkSize;
+        while (pos < length) {
+            while (pos < length && !isBoundary(codes.get(pos))) {
+                pos++;
+            }
+            if (pos + 1 < length) {
+                chunkBegins.add(pos + 1);
+            }
+            pos += chunkSize;
+        }
+        chunkBegins.add(length);
+
+        final var tasks = new ArrayList<ForkJoinTask<Chunk>>();
+        for (int idx = 0; idx + 1 < chunkBegins.size(); idx++) {
+            final int begin = chunkBegins.get(idx);
+            final int end = chunkBegins.get(idx + 1);
+            tasks.add(pool.submit(() -> lexChunk(begin, end)));
+        }
+
+        for (final var task : tasks) {
+            final var chunk = task.join();
+            diagnostics.addAll(chunk.diagnostics());
+            final var first = tokens.size();
+            tokens.addAll(chunk.tokens());
+            for (int idx = first; idx < tokens.size(); idx++) {
+                if (tokens.kindAt(idx) == idKind) {
+                    final var begin = tokens.startAt(idx);
+                    tokens.setSymbol(idx, symbolTable.intern(codes, begin, begin + tokens.lengthAt(idx)));
+                }
+            }
+        }
+        tokens.add(TokenKind.eof(), length, 0);
+    }
+
+    /**
+     * @see #runParallel(ForkJoinPool)
+     */
+    public void runParallel() {
+        runParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 并行分析时切分出的每一段最少的字节数, 太小的段不值得调度
+     */
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 并行分析时一段源代码的分析结果
+     *
+     * @param tokens      该段中的 token, 不含 EOF, 标识符尚未驻留
+     * @param diagnostics 该段中的词法错误
+     */
+    private record Chunk(TokenBuffer tokens, List<Diagnostic> diagnostics) {
+    }
+
+    /**
+     * @return 源代码 [begin, end) 范围内的分析结果
+     */
+    private Chunk lexChunk(int begin, int end) {
+        final var chunkTokens = new TokenBuffer(codes, symbolTable);
+        final var chunkDiagnostics = new ArrayList<Diagnostic>();
+        final var scanner = new Scanner(begin, end, chunkDiagnostics);
+        while (scanner.advance()) {
+            final var tokenBegin = scanner.tokenBegin;
+            final var tokenEnd = scanner.tokenEnd;
+            chunkTokens.add(resolveKind(scanner.tokenState, tokenBegin, tokenEnd), tokenBegin, tokenEnd - tokenBegin);
+        }
+        return new Chunk(chunkTokens, chunkDiagnostics);
+    }
+
+    /**
+     * @param b 源代码中的一个字节
+     * @return 该字节之后是否可以安全地切分源代码
+     */
+    private boolean isBoundary(byte b) {
+        return (b == ';' || b == '\n') && table.isBoundary(table.classOf(b));
+    }
+
+    /**
+     * 按需分析的 token 序列. 每次遍历都会从头开始扫描源代码, 每调用一次 next 才识别出一个 token, 整个 token 列表不会被存下来.
+     * <br>
+     * 将其交给 {@code SyntaxAnalyzer.loadTokens} 即可让词法分析与语法分析交替进行. 符号表同样是在扫描过程中逐步填充的.
+     *
+     * @return 以 EOF 结尾的 token 序列
+     */
+    public Iterable<Token> lazyTokens() {
+        return TokenIterator::new;
+    }
+
+    /**
+     * 自动机实现的词法分析过程, 状态转移均预先展开在 DFATable 中
+     * <br>
+     * 按最长匹配识别: 途经可以接受的状态时记下其位置, 之后出错则退回到最近一次记下的位置并接受该 token, 从其后重新扫描.
+     * 没有可退回的位置时, 记录错误并丢弃出错的字符与当前未完成的 token, 从初态重新开始扫描.
+     * 自动机能识别但码点文件中没有对应类型的词素同样记录错误后跳过.
+     */
+    private class Scanner {
+        /**
+         * @param begin       扫描的起始位置, 必须位于 token 边界上
+         * @param end         扫描的结束位置 (不含), 到达此处即视为输入结束
+         * @param diagnostics 记录词法错误的列表
+         */
+        Scanner(int begin, int end, List<Diagnostic> diagnostics) {
+            this.fastPointer = begin;
+            this.length = end;
+            this.diagnostics = diagnostics;
+        }
+
+        // 下一个待读入的字节
+        private int fastPointer;
+        private final int length;
+        private final List<Diagnostic> diagnostics;
+
+        // 最近一次识别出的 token 的终态与范围
+        private int tokenState;
+        private int tokenBegin;
+        private int tokenEnd;
+
+        /**
+         * 识别下一个 token
+         *
+         * @return 是否识别出了 token, 为 false 时说明已经到达输入末尾
+         */
+        boolean advance() {
+            final var codes = LexicalAnalyzer.this.codes;
+            final var transition = table.transition;
+            final var accept = table.accept;
+            final var retract = table.retract;
+            final var fallback = table.fallback;
+            final int endClass = table.endClass();
+            final int length = this.length;
+
+            // slowPointer 指向当前 token 的开头, fastPointer 指向下一个待读入的字节
+            int fastPointer = this.fastPointer;
+            int slowPointer = fastPointer;
+            int currentState = 0;
+            // 最近一次途经的可接受状态对应的终态, 以及届时 token 的结束位置
+            int lastAcceptState = DFATable.ERROR;
+            int lastAcceptEnd = 0;
+
+            while (true) {
+                // 输入结束也作为一个字符类参与转移, 以便接受文件末尾的最后一个 token
+                final int charClass;
+                final int width;
+                if (fastPointer >= length) {
+                    charClass = endClass;
+                    width = 0;
+                } else {
+                    final int b = codes.get(fastPointer);
+                    if (b >= 0) {
+                        charClass = table.classOf(b);
+                        width = 1;
+                    } else {
+                        // UTF-8 多字节序列, 解码出码点后再分类
+                        width = utf8Width(b);
+                        charClass = table.classOf(decodeUtf8(fastPointer, width));
                     }
+                }
 
-                    case 18 -> {
-                        if (c == '*') yield 19;
-                        else yield 20;
+                if (currentState == 0 && charClass == endClass) {
+                    this.fastPointer = fastPointer;
+                    return false;
+                }
+
+                final int nextState = transition[currentState][charClass];
+                if (nextState == DFATable.ERROR) {
+                    if (lastAcceptState != DFATable.ERROR) {
+                        if (acceptKinds[lastAcceptState] == null) {
+                            reportUnknown(lastAcceptState, slowPointer);
+                            fastPointer = lastAcceptEnd;
+                            slowPointer = fastPointer;
+                            currentState = 0;
+                            lastAcceptState = DFATable.ERROR;
+                            continue;
+                        }
+                        this.fastPointer = lastAcceptEnd;
+                        this.tokenState = lastAcceptState;
+                        this.tokenBegin = slowPointer;
+                        this.tokenEnd = lastAcceptEnd;
+                        return true;
                     }
 
-                    case 21 -> {
-                        if (c == '=') yield 22;
-                        else yield 23;
+                    if (charClass == endClass) {
+                        diagnostics.add(new Diagnostic(Diagnostic.Kind.Lexical, fastPointer, "Unexpected end of input"));
+                        this.fastPointer = fastPointer;
+                        return false;
                     }
 
-                    // 如果检测到终态，那么进行下一轮检测
-                    default -> 0;
-                };
-
-                if (finalStates.contains(nextState)){
-                    Token tempToken;
-                    tempToken = switch (nextState){
-                        case 15 -> {
-                            if ("return".equals(codes.substring(slowPointer, fastPointer))) yield  Token.simple("return");
-                            else if("int".equals(codes.substring(slowPointer, fastPointer))) yield  Token.simple("int");
-                            else{
-                                if(!symbolTable.has(codes.substring(slowPointer, fastPointer))){
-                                    symbolTable.add(codes.substring(slowPointer, fastPointer));
-                                }
-                                yield Token.normal("id", codes.substring(slowPointer, fastPointer));
-                            }
-                        }
-                        case 17 -> Token.normal("IntConst", codes.substring(slowPointer, fastPointer));
-                        case 19 -> Token.simple("**");
-                        case 20 -> Token.simple("*");
-                        case 22 -> Token.simple("==");
-                        case 23 -> Token.simple("=");
-                        case 26 -> Token.simple("(");
-                        case 27 -> Token.simple(")");
-                        case 28 -> Token.simple("Semicolon");
-                        case 29 -> Token.simple("+");
-                        case 30 -> Token.simple("-");
-                        case 31 -> Token.simple("/");
-                        default -> throw new NotImplementedException();
-                    };
-                    tokens.add(tempToken);
+                    diagnostics.add(new Diagnostic(Diagnostic.Kind.Lexical, fastPointer, "Unexpected character '%s'".formatted(
+                        Character.toString(decodeUtf8(fastPointer, width)))));
+                    fastPointer += width;
+                    slowPointer = fastPointer;
+                    currentState = 0;
+                    continue;
                 }
+                fastPointer += width;
 
-                switch (currentState) {
-                    case 0 -> {
-                        if (isUseless) {
-                            slowPointer++;
-                        }
+                if (nextState == 0) {
+                    // 跳过无用字符
+                    slowPointer = fastPointer;
+                } else if (fallback[nextState] != DFATable.ERROR) {
+                    lastAcceptState = fallback[nextState];
+                    lastAcceptEnd = fastPointer;
+                } else if (accept[nextState]) {
+                    if (retract[nextState]) {
+                        fastPointer -= width;
                     }
-                    case 14, 16 -> {
-                        if (c == ';') {
-                            tokens.add(Token.simple("Semicolon"));
-                        }
+                    if (acceptKinds[nextState] == null) {
+                        reportUnknown(nextState, slowPointer);
+                        slowPointer = fastPointer;
+                        currentState = 0;
+                        lastAcceptState = DFATable.ERROR;
+                        continue;
                     }
-                    default -> {}
+                    this.fastPointer = fastPointer;
+                    this.tokenState = nextState;
+                    this.tokenBegin = slowPointer;
+                    this.tokenEnd = fastPointer;
+                    return true;
                 }
 
                 currentState = nextState;
-                fastPointer++;
             }
-            slowPointer = fastPointer - 1;
         }
-        tokens.add(Token.eof());
+
+        private void reportUnknown(int state, int begin) {
+            diagnostics.add(new Diagnostic(Diagnostic.Kind.Lexical, begin,
+                "Unknown token '%s'".formatted(table.acceptKind[state])));
+        }
+    }
+
+    /**
+     * 每次 next 时才向前扫描一个 token 的迭代器, 最后一个元素总是 EOF
+     */
+    private class TokenIterator implements PositionedTokenIterator {
+        private final Scanner scanner = new Scanner(0, codes.limit(), diagnostics);
+        private boolean reachedEOF = false;
+        private int lastTokenBegin = -1;
+
+        @Override
+        public boolean hasNext() {
+            return !reachedEOF;
+        }
+
+        @Override
+        public Token next() {
+            if (reachedEOF) {
+                throw new NoSuchElementException();
+            }
+
+            if (scanner.advance()) {
+                final var begin = scanner.tokenBegin;
+                final var end = scanner.tokenEnd;
+                lastTokenBegin = begin;
+                final var kind = resolveKind(scanner.tokenState, begin, end);
+                if (kind == idKind) {
+                    return Token.normal(kind, symbolTable.nameOf(symbolTable.intern(codes, begin, end)));
+                } else if (kind == intConstKind) {
+                    return Token.normal(kind, text(begin, end));
+                } else {
+                    return TokenBuffer.simpleToken(kind);
+                }
+            }
+
+            reachedEOF = true;
+            lastTokenBegin = codes.limit();
+            return TokenBuffer.simpleToken(TokenKind.eof());
+        }
+
+        @Override
+        public int lastTokenBegin() {
+            return lastTokenBegin;
+        }
+    }
+
+    /**
+     * 根据到达的终态与 token 的范围确定 token 的类型
+     *
+     * @param state 到达的终态, Scanner 保证其在码点文件中有对应的类型
+     * @param begin token 在源代码中的起始位置
+     * @param end   token 在源代码中的结束位置 (不含)
+     * @return token 的类型
+     */
+    private TokenKind resolveKind(int state, int begin, int end) {
+        final var kind = acceptKinds[state];
+        if (kind == idKind) {
+            // 以完美哈希在字节上识别关键字, 避免为关键字构造字符串
+            final var keyword = keywords.lookup(codes, begin, end);
+            if (keyword != null) {
+                return keyword;
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * @return 源代码 [begin, end) 范围内的文本
+     */
+    private String text(int begin, int end) {
+        final var bytes = new byte[end - begin];
+        codes.get(begin, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param lead UTF-8 序列的首字节
+     * @return 该序列的字节数, 非法的首字节按单字节处理
+     */
+    private static int utf8Width(int lead) {
+        if ((lead & 0xE0) == 0xC0) {
+            return 2;
+        } else if ((lead & 0xF0) == 0xE0) {
+            return 3;
+        } else if ((lead & 0xF8) == 0xF0) {
+            return 4;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * @return 从 pos 开始的 width 字节长的 UTF-8 序列所表示的码点
+     */
+    private int decodeUtf8(int pos, int width) {
+        if (width == 1) {
+            return codes.get(pos) & 0xFF;
+        }
+
+        var codePoint = codes.get(pos) & (0x7F >> width);
+        for (int idx = 1; idx < width && pos + idx < codes.limit(); idx++) {
+            codePoint = (codePoint << 6) | (codes.get(pos + idx) & 0x3F);
+        }
+        return codePoint;
     }
 
     /**
@@ -176,6 +479,22 @@ public class LexicalAnalyzer {
         return tokens;
     }
 
+    /**
+     * 获得以紧凑形式存储的词法分析结果, 保证在调用了 run 方法之后调用
+     *
+     * @return token 缓冲区
+     */
+    public TokenBuffer getTokenBuffer() {
+        return tokens;
+    }
+
+    /**
+     * @return 分析过程中发现的所有词法错误, 按在源代码中的位置排列
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
     public void dumpTokens(String path) {
         FileUtils.writeLines(
             path,
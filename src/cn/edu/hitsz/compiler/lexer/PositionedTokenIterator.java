@@ -0,0 +1,15 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Iterator;
+
+/**
+ * 能给出 token 在源代码中位置的 token 迭代器
+ * <br>
+ * 按需分析时 token 不会被存下来, 语法分析器报告错误时便通过它取得出错 token 的位置.
+ */
+public interface PositionedTokenIterator extends Iterator<Token> {
+    /**
+     * @return 最近一次 {@link #next()} 返回的 token 在源代码中的起始位置, 尚未调用 next 时返回 -1
+     */
+    int lastTokenBegin();
+}
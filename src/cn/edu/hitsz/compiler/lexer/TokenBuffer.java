@@ -0,0 +1,227 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 紧凑的 token 存储
+ * <br>
+ * 以平行的 int 数组分别存放每个 token 的类型 (TokenKind 的稠密编号), 在源代码中的起始位置与长度, 而不是为每个 token 都分配一个对象.
+ * token 的文本并不复制, 需要时再从源代码缓冲区中取出. 标识符另外记录其在符号表中驻留得到的符号编号, 其文本直接取符号表中的驻留字符串.
+ * <br>
+ * 为了兼容 {@code ActionObserver.whenShift} 等接受 {@link Token} 的接口, 该类也可以按下标或迭代取得 Token 视图:
+ * 不带文本的 token (如 {@code +}, {@code ;}) 按类型共享同一个实例, 只有标识符与整数常量才会构造新的 Token.
+ */
+public class TokenBuffer implements Iterable<Token> {
+    /**
+     * @param source      token 所在的源代码缓冲区
+     * @param symbolTable 标识符驻留所在的符号表
+     */
+    public TokenBuffer(ByteBuffer source, SymbolTable symbolTable) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+        this.idIndex = TokenKind.fromString("id").getIndex();
+        this.intConstIndex = TokenKind.fromString("IntConst").getIndex();
+    }
+
+    /**
+     * 在末尾追加一个 token
+     *
+     * @param kind   token 类型
+     * @param start  token 在源代码中的起始位置
+     * @param length token 在源代码中的长度
+     */
+    public void add(TokenKind kind, int start, int length) {
+        add(kind, start, length, NO_SYMBOL);
+    }
+
+    /**
+     * 在末尾追加一个标识符 token
+     *
+     * @param kind   token 类型
+     * @param start  token 在源代码中的起始位置
+     * @param length token 在源代码中的长度
+     * @param symbol 标识符在符号表中的符号编号
+     */
+    public void add(TokenKind kind, int start, int length, int symbol) {
+        if (size == kinds.length) {
+            grow(Math.max(16, size * 2));
+        }
+
+        kinds[size] = kind.getIndex();
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol;
+        size++;
+    }
+
+    /**
+     * @param index  token 下标
+     * @param symbol 该标识符 token 在符号表中的符号编号
+     */
+    public void setSymbol(int index, int symbol) {
+        symbols[checkIndex(index)] = symbol;
+    }
+
+    /**
+     * 将另一个缓冲区中的所有 token 按顺序追加到末尾, 两者应来自同一份源代码
+     *
+     * @param other 另一个缓冲区
+     */
+    public void addAll(TokenBuffer other) {
+        final var newSize = size + other.size;
+        if (newSize > kinds.length) {
+            grow(Math.max(newSize, size * 2));
+        }
+
+        System.arraycopy(other.kinds, 0, kinds, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        System.arraycopy(other.symbols, 0, symbols, size, other.size);
+        size = newSize;
+    }
+
+    /**
+     * @return token 数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index token 下标
+     * @return 该 token 的类型
+     */
+    public TokenKind kindAt(int index) {
+        return TokenKind.fromIndex(kinds[checkIndex(index)]);
+    }
+
+    /**
+     * @param index token 下标
+     * @return 该 token 在源代码中的起始位置
+     */
+    public int startAt(int index) {
+        return starts[checkIndex(index)];
+    }
+
+    /**
+     * @param index token 下标
+     * @return 该 token 在源代码中的长度
+     */
+    public int lengthAt(int index) {
+        return lengths[checkIndex(index)];
+    }
+
+    /**
+     * @param index token 下标
+     * @return 该 token 的文本, 不带文本的 token 为空字符串
+     */
+    public String textAt(int index) {
+        if (!hasText(kinds[checkIndex(index)])) {
+            return "";
+        }
+        if (symbols[index] != NO_SYMBOL) {
+            return symbolTable.nameOf(symbols[index]);
+        }
+
+        final var bytes = new byte[lengths[index]];
+        source.get(starts[index], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param index token 下标
+     * @return 该 token 的 Token 视图
+     */
+    public Token get(int index) {
+        final var kind = kindAt(index);
+        if (hasText(kinds[index])) {
+            return Token.normal(kind, textAt(index));
+        } else {
+            return simpleToken(kind);
+        }
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * @param kindIndex token 类型的稠密编号
+     * @return 该类型的 token 是否带有文本 (即是否为标识符或整数常量)
+     */
+    private boolean hasText(int kindIndex) {
+        return kindIndex == idIndex || kindIndex == intConstIndex;
+    }
+
+    /**
+     * 不带文本的 token 不可变, 同一类型的 token 可以共享同一个实例
+     *
+     * @param kind token 类型
+     * @return 该类型的共享 token
+     */
+    static Token simpleToken(TokenKind kind) {
+        var cache = simpleTokens;
+        if (cache.length != TokenKind.count()) {
+            cache = new Token[TokenKind.count()];
+            simpleTokens = cache;
+        }
+
+        final var index = kind.getIndex();
+        var token = cache[index];
+        if (token == null) {
+            token = kind == TokenKind.eof() ? Token.eof() : Token.simple(kind);
+            cache[index] = token;
+        }
+        return token;
+    }
+
+    private static Token[] simpleTokens = new Token[0];
+
+    private void grow(int newCapacity) {
+        kinds = Arrays.copyOf(kinds, newCapacity);
+        starts = Arrays.copyOf(starts, newCapacity);
+        lengths = Arrays.copyOf(lengths, newCapacity);
+        symbols = Arrays.copyOf(symbols, newCapacity);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index %d out of bounds for size %d".formatted(index, size));
+        }
+        return index;
+    }
+
+    private static final int NO_SYMBOL = -1;
+
+    private final ByteBuffer source;
+    private final SymbolTable symbolTable;
+    private final int idIndex;
+    private final int intConstIndex;
+    private int[] kinds = new int[0];
+    private int[] starts = new int[0];
+    private int[] lengths = new int[0];
+    private int[] symbols = new int[0];
+    private int size = 0;
+}
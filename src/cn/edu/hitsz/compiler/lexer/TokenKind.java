@@ -4,8 +4,10 @@ import cn.edu.hitsz.compiler.parser.table.Term;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -18,6 +20,7 @@ import java.util.Map;
  * TokenKind 类还作为终结符, 供表示语法及产生式的类使用. 这就是为什么它继承了 Term (语法项) 作为父类.
  * <br>
  * 如果你目前在完成实验, 那么只需要关注用于构造 TokenKind 的 fromString 与 eof, 用于获得信息的 getIdentifier 与 getCode 即可.
+ * getIndex 给出的稠密编号则用于以数组代替 Map 的各种表.
  * 倘若你有空探寻一下代码的细致实现, 那么请详见代码中的实现注释, 并同时参考 SeeAlso 中的内容.
  * <br>
  *
@@ -28,7 +31,9 @@ import java.util.Map;
 public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
     private static final Map<String, TokenKind> allowed = new HashMap<>();
-    private static final TokenKind eof = new TokenKind("$", -1);
+    private static final TokenKind eof = new TokenKind("$", -1, 0);
+    // 按稠密编号排列的所有 TokenKind, EOF 的编号为 0
+    private static final List<TokenKind> inIndexOrder = new ArrayList<>(List.of(eof));
 
     /**
      * 从码点文件中读取允许的标识符集合
@@ -47,7 +52,9 @@ public class TokenKind extends Term {
             final var code = Integer.parseInt(words[0]);
             final var id = words[1];
 
-            allowed.put(id, new TokenKind(id, code));
+            final var kind = new TokenKind(id, code, inIndexOrder.size());
+            allowed.put(id, kind);
+            inIndexOrder.add(kind);
         }
 
         // EOF
@@ -86,6 +93,21 @@ public class TokenKind extends Term {
         return allowed.get(id);
     }
 
+    /**
+     * @param index 稠密编号
+     * @return 该编号对应的 TokenKind
+     */
+    public static TokenKind fromIndex(int index) {
+        return inIndexOrder.get(index);
+    }
+
+    /**
+     * @return 所有 TokenKind (包括 EOF) 的数量, 稠密编号的范围为 [0, count)
+     */
+    public static int count() {
+        return inIndexOrder.size();
+    }
+
     /**
      * @return 代表 EOF 的 TokenKind
      */
@@ -107,10 +129,19 @@ public class TokenKind extends Term {
         return code;
     }
 
-    private TokenKind(String id, int code) {
+    /**
+     * @return 获得该 TokenKind 的稠密编号. 与码点不同, 稠密编号从 0 开始连续分配 (EOF 为 0), 适合直接用作数组下标
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    private TokenKind(String id, int code, int index) {
         super(id);
         this.code = code;
+        this.index = index;
     }
 
     private final int code;
+    private final int index;
 }
@@ -0,0 +1,124 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 各观察者登记的动作处理函数
+ * <br>
+ * 驱动程序按注册顺序把所有观察者的处理函数登记到同一张表中: 一般的 {@link ActionObserver} 登记为对所有产生式都调用的处理函数,
+ * {@link HandlerObserver} 则只为自己关心的产生式登记. 之后再按产生式编号把同一产生式的处理函数融合成一个, 规约时只需按编号取出调用,
+ * 不关心该产生式的观察者完全不会被调用.
+ */
+final class ActionHandlers {
+    @FunctionalInterface
+    interface ShiftHandler {
+        void handle(Status currentStatus, Token currentToken);
+    }
+
+    @FunctionalInterface
+    interface ReduceHandler {
+        void handle(Status currentStatus, Production production);
+    }
+
+    @FunctionalInterface
+    interface AcceptHandler {
+        void handle(Status currentStatus);
+    }
+
+    void onShift(ShiftHandler handler) {
+        shiftHandlers.add(handler);
+    }
+
+    /**
+     * @param production 产生式编号, 即其在 grammar.txt 中的行号
+     * @param handler    规约该产生式时的处理函数
+     */
+    void onReduce(int production, ReduceHandler handler) {
+        reduceHandlers.add(new ReduceEntry(production, handler));
+    }
+
+    /**
+     * @param handler 规约任意产生式时的处理函数
+     */
+    void onAnyReduce(ReduceHandler handler) {
+        reduceHandlers.add(new ReduceEntry(ANY_PRODUCTION, handler));
+    }
+
+    void onAccept(AcceptHandler handler) {
+        acceptHandlers.add(handler);
+    }
+
+    /**
+     * @return 融合后的移入处理函数, 没有登记时为 null
+     */
+    ShiftHandler fuseShift() {
+        final var handlers = shiftHandlers.toArray(ShiftHandler[]::new);
+        return switch (handlers.length) {
+            case 0 -> null;
+            case 1 -> handlers[0];
+            default -> (status, token) -> {
+                for (final var handler : handlers) {
+                    handler.handle(status, token);
+                }
+            };
+        };
+    }
+
+    /**
+     * @param productionCount 产生式编号的上界 (不含)
+     * @return 以产生式编号为下标的融合后的规约处理函数, 没有登记的产生式为 null
+     */
+    ReduceHandler[] fuseReduce(int productionCount) {
+        final var result = new ReduceHandler[productionCount];
+        for (int production = 0; production < productionCount; production++) {
+            final var handlers = new ArrayList<ReduceHandler>();
+            for (final var entry : reduceHandlers) {
+                if (entry.production() == production || entry.production() == ANY_PRODUCTION) {
+                    handlers.add(entry.handler());
+                }
+            }
+
+            final var fused = handlers.toArray(ReduceHandler[]::new);
+            result[production] = switch (fused.length) {
+                case 0 -> null;
+                case 1 -> fused[0];
+                default -> (status, reduced) -> {
+                    for (final var handler : fused) {
+                        handler.handle(status, reduced);
+                    }
+                };
+            };
+        }
+        return result;
+    }
+
+    /**
+     * @return 融合后的接受处理函数, 没有登记时为 null
+     */
+    AcceptHandler fuseAccept() {
+        final var handlers = acceptHandlers.toArray(AcceptHandler[]::new);
+        return switch (handlers.length) {
+            case 0 -> null;
+            case 1 -> handlers[0];
+            default -> status -> {
+                for (final var handler : handlers) {
+                    handler.handle(status);
+                }
+            };
+        };
+    }
+
+    private static final int ANY_PRODUCTION = -1;
+
+    private record ReduceEntry(int production, ReduceHandler handler) {
+    }
+
+    private final List<ShiftHandler> shiftHandlers = new ArrayList<>();
+    private final List<ReduceEntry> reduceHandlers = new ArrayList<>();
+    private final List<AcceptHandler> acceptHandlers = new ArrayList<>();
+}
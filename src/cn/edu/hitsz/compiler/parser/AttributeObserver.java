@@ -0,0 +1,16 @@
+package cn.edu.hitsz.compiler.parser;
+
+/**
+ * 使用驱动程序共享的语义值栈的动作观察者
+ * <br>
+ * 与一般的 {@link ActionObserver} 自己维护状态栈不同, 实现此接口的观察者在注册时会得到驱动程序维护的 {@link SemanticStack},
+ * 在 whenReduce 中直接从中读取产生式体的属性并写入产生式头的综合属性, 不必在每次移入与规约时都维护一份自己的栈.
+ */
+interface AttributeObserver extends ActionObserver {
+    /**
+     * 注册到驱动程序时会调用此函数
+     *
+     * @param stack 驱动程序维护的语义值栈
+     */
+    void setSemanticStack(SemanticStack stack);
+}
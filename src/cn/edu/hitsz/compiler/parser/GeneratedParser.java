@@ -0,0 +1,733 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 由 {@link cn.edu.hitsz.compiler.parser.table.ParserGenerator} 根据 LR 分析表生成的专用语法分析器, 请勿手动修改
+ */
+final class GeneratedParser extends SpecializedParser {
+    GeneratedParser() {
+        super(0x7F18D82A55295AC9L);
+    }
+
+    @Override
+    boolean parse(SyntaxAnalyzer analyzer, Iterator<Token> tokens) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[0] = 0;
+        Token token = tokens.next();
+        int kind = token.getKind().getIndex();
+        int tokenIndex = 0;
+        while (true) {
+            final int status = stack[top];
+            final int next;
+            switch (status) {
+                case 0:
+                    switch (kind) {
+                        case 1: // int
+                            next = 5;
+                            break;
+                        case 2: // return
+                            next = 6;
+                            break;
+                        case 12: // id
+                            next = 4;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 1:
+                    switch (kind) {
+                        case 0: // $
+                            analyzer.accepted(status);
+                            return false;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 2:
+                    switch (kind) {
+                        case 5: // Semicolon
+                            next = 7;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 3:
+                    switch (kind) {
+                        case 12: // id
+                            next = 8;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 4:
+                    switch (kind) {
+                        case 3: // =
+                            next = 9;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 5:
+                    switch (kind) {
+                        case 12: // id
+                            // reduce D -> int
+                            top -= 1;
+                            analyzer.reduced(status, 5);
+                            stack[top + 1] = goto5(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 6:
+                    switch (kind) {
+                        case 10: // (
+                            next = 14;
+                            break;
+                        case 12: // id
+                            next = 13;
+                            break;
+                        case 13: // IntConst
+                            next = 15;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 7:
+                    switch (kind) {
+                        case 0: // $
+                            // reduce S_list -> S Semicolon
+                            top -= 2;
+                            analyzer.reduced(status, 3);
+                            stack[top + 1] = goto1(stack[top]);
+                            top++;
+                            continue;
+                        case 1: // int
+                            next = 5;
+                            break;
+                        case 2: // return
+                            next = 6;
+                            break;
+                        case 12: // id
+                            next = 4;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 8:
+                    switch (kind) {
+                        case 5: // Semicolon
+                            // reduce S -> D id
+                            top -= 2;
+                            analyzer.reduced(status, 4);
+                            stack[top + 1] = goto2(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 9:
+                    switch (kind) {
+                        case 10: // (
+                            next = 14;
+                            break;
+                        case 12: // id
+                            next = 13;
+                            break;
+                        case 13: // IntConst
+                            next = 15;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 10:
+                    switch (kind) {
+                        case 5: // Semicolon
+                            // reduce S -> return E
+                            top -= 2;
+                            analyzer.reduced(status, 7);
+                            stack[top + 1] = goto2(stack[top]);
+                            top++;
+                            continue;
+                        case 6: // +
+                            next = 18;
+                            break;
+                        case 7: // -
+                            next = 19;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 11:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                            // reduce E -> A
+                            top -= 1;
+                            analyzer.reduced(status, 10);
+                            stack[top + 1] = goto0(stack[top]);
+                            top++;
+                            continue;
+                        case 8: // *
+                            next = 20;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 12:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                            // reduce A -> B
+                            top -= 1;
+                            analyzer.reduced(status, 12);
+                            stack[top + 1] = goto3(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 13:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                            // reduce B -> id
+                            top -= 1;
+                            analyzer.reduced(status, 14);
+                            stack[top + 1] = goto4(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 14:
+                    switch (kind) {
+                        case 10: // (
+                            next = 25;
+                            break;
+                        case 12: // id
+                            next = 24;
+                            break;
+                        case 13: // IntConst
+                            next = 26;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 15:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                            // reduce B -> IntConst
+                            top -= 1;
+                            analyzer.reduced(status, 15);
+                            stack[top + 1] = goto4(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 16:
+                    switch (kind) {
+                        case 0: // $
+                            // reduce S_list -> S Semicolon S_list
+                            top -= 3;
+                            analyzer.reduced(status, 2);
+                            stack[top + 1] = goto1(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 17:
+                    switch (kind) {
+                        case 5: // Semicolon
+                            // reduce S -> id = E
+                            top -= 3;
+                            analyzer.reduced(status, 6);
+                            stack[top + 1] = goto2(stack[top]);
+                            top++;
+                            continue;
+                        case 6: // +
+                            next = 18;
+                            break;
+                        case 7: // -
+                            next = 19;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 18:
+                    switch (kind) {
+                        case 10: // (
+                            next = 14;
+                            break;
+                        case 12: // id
+                            next = 13;
+                            break;
+                        case 13: // IntConst
+                            next = 15;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 19:
+                    switch (kind) {
+                        case 10: // (
+                            next = 14;
+                            break;
+                        case 12: // id
+                            next = 13;
+                            break;
+                        case 13: // IntConst
+                            next = 15;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 20:
+                    switch (kind) {
+                        case 10: // (
+                            next = 14;
+                            break;
+                        case 12: // id
+                            next = 13;
+                            break;
+                        case 13: // IntConst
+                            next = 15;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 21:
+                    switch (kind) {
+                        case 6: // +
+                            next = 31;
+                            break;
+                        case 7: // -
+                            next = 32;
+                            break;
+                        case 11: // )
+                            next = 30;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 22:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 11: // )
+                            // reduce E -> A
+                            top -= 1;
+                            analyzer.reduced(status, 10);
+                            stack[top + 1] = goto0(stack[top]);
+                            top++;
+                            continue;
+                        case 8: // *
+                            next = 33;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 23:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                        case 11: // )
+                            // reduce A -> B
+                            top -= 1;
+                            analyzer.reduced(status, 12);
+                            stack[top + 1] = goto3(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 24:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                        case 11: // )
+                            // reduce B -> id
+                            top -= 1;
+                            analyzer.reduced(status, 14);
+                            stack[top + 1] = goto4(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 25:
+                    switch (kind) {
+                        case 10: // (
+                            next = 25;
+                            break;
+                        case 12: // id
+                            next = 24;
+                            break;
+                        case 13: // IntConst
+                            next = 26;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 26:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                        case 11: // )
+                            // reduce B -> IntConst
+                            top -= 1;
+                            analyzer.reduced(status, 15);
+                            stack[top + 1] = goto4(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 27:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                            // reduce E -> E + A
+                            top -= 3;
+                            analyzer.reduced(status, 8);
+                            stack[top + 1] = goto0(stack[top]);
+                            top++;
+                            continue;
+                        case 8: // *
+                            next = 20;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 28:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                            // reduce E -> E - A
+                            top -= 3;
+                            analyzer.reduced(status, 9);
+                            stack[top + 1] = goto0(stack[top]);
+                            top++;
+                            continue;
+                        case 8: // *
+                            next = 20;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 29:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                            // reduce A -> A * B
+                            top -= 3;
+                            analyzer.reduced(status, 11);
+                            stack[top + 1] = goto3(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 30:
+                    switch (kind) {
+                        case 5: // Semicolon
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                            // reduce B -> ( E )
+                            top -= 3;
+                            analyzer.reduced(status, 13);
+                            stack[top + 1] = goto4(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 31:
+                    switch (kind) {
+                        case 10: // (
+                            next = 25;
+                            break;
+                        case 12: // id
+                            next = 24;
+                            break;
+                        case 13: // IntConst
+                            next = 26;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 32:
+                    switch (kind) {
+                        case 10: // (
+                            next = 25;
+                            break;
+                        case 12: // id
+                            next = 24;
+                            break;
+                        case 13: // IntConst
+                            next = 26;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 33:
+                    switch (kind) {
+                        case 10: // (
+                            next = 25;
+                            break;
+                        case 12: // id
+                            next = 24;
+                            break;
+                        case 13: // IntConst
+                            next = 26;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 34:
+                    switch (kind) {
+                        case 6: // +
+                            next = 31;
+                            break;
+                        case 7: // -
+                            next = 32;
+                            break;
+                        case 11: // )
+                            next = 38;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 35:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 11: // )
+                            // reduce E -> E + A
+                            top -= 3;
+                            analyzer.reduced(status, 8);
+                            stack[top + 1] = goto0(stack[top]);
+                            top++;
+                            continue;
+                        case 8: // *
+                            next = 33;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 36:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 11: // )
+                            // reduce E -> E - A
+                            top -= 3;
+                            analyzer.reduced(status, 9);
+                            stack[top + 1] = goto0(stack[top]);
+                            top++;
+                            continue;
+                        case 8: // *
+                            next = 33;
+                            break;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                    break;
+                case 37:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                        case 11: // )
+                            // reduce A -> A * B
+                            top -= 3;
+                            analyzer.reduced(status, 11);
+                            stack[top + 1] = goto3(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                case 38:
+                    switch (kind) {
+                        case 6: // +
+                        case 7: // -
+                        case 8: // *
+                        case 11: // )
+                            // reduce B -> ( E )
+                            top -= 3;
+                            analyzer.reduced(status, 13);
+                            stack[top + 1] = goto4(stack[top]);
+                            top++;
+                            continue;
+                        default:
+                            return fail(stack, top, token, tokenIndex);
+                    }
+                default:
+                    return fail(stack, top, token, tokenIndex);
+            }
+
+            if (++top == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top] = next;
+            analyzer.shifted(status, token);
+            if (!tokens.hasNext()) {
+                return false;
+            }
+            token = tokens.next();
+            kind = token.getKind().getIndex();
+            tokenIndex++;
+        }
+    }
+
+    // E
+    private static int goto0(int status) {
+        switch (status) {
+            case 6:
+                return 10;
+            case 9:
+                return 17;
+            case 14:
+                return 21;
+            case 25:
+                return 34;
+            default:
+                return -1;
+        }
+    }
+
+    // S_list
+    private static int goto1(int status) {
+        switch (status) {
+            case 0:
+                return 1;
+            case 7:
+                return 16;
+            default:
+                return -1;
+        }
+    }
+
+    // S
+    private static int goto2(int status) {
+        switch (status) {
+            case 0:
+                return 2;
+            case 7:
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    // A
+    private static int goto3(int status) {
+        switch (status) {
+            case 6:
+                return 11;
+            case 9:
+                return 11;
+            case 14:
+                return 22;
+            case 18:
+                return 27;
+            case 19:
+                return 28;
+            case 25:
+                return 22;
+            case 31:
+                return 35;
+            case 32:
+                return 36;
+            default:
+                return -1;
+        }
+    }
+
+    // B
+    private static int goto4(int status) {
+        switch (status) {
+            case 6:
+                return 12;
+            case 9:
+                return 12;
+            case 14:
+                return 23;
+            case 18:
+                return 12;
+            case 19:
+                return 12;
+            case 20:
+                return 29;
+            case 25:
+                return 23;
+            case 31:
+                return 23;
+            case 32:
+                return 23;
+            case 33:
+                return 37;
+            default:
+                return -1;
+        }
+    }
+
+    // D
+    private static int goto5(int status) {
+        switch (status) {
+            case 0:
+                return 3;
+            case 7:
+                return 3;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+
+/**
+ * 按产生式登记处理函数的动作观察者
+ * <br>
+ * 实现此接口的观察者不再在 whenReduce 中按产生式编号分派, 而是在注册时通过 {@link #registerHandlers} 只为自己关心的动作与产生式登记处理函数,
+ * 驱动程序会把它们与其它观察者的处理函数按产生式融合. 驱动程序不会调用这类观察者的 whenShift, whenReduce 与 whenAccept.
+ */
+interface HandlerObserver extends ActionObserver {
+    /**
+     * 注册到驱动程序时会调用此函数
+     *
+     * @param handlers 登记处理函数的表
+     */
+    void registerHandlers(ActionHandlers handlers);
+
+    @Override
+    default void whenShift(Status currentStatus, Token currentToken) {
+    }
+
+    @Override
+    default void whenReduce(Status currentStatus, Production production) {
+    }
+
+    @Override
+    default void whenAccept(Status currentStatus) {
+    }
+}
@@ -5,151 +5,100 @@ import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.parser.table.Production;
-import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 // TODO: 实验三: 实现 IR 生成
 
 /**
  *
  */
-public class IRGenerator implements ActionObserver {
+public class IRGenerator implements AttributeObserver, HandlerObserver {
 
     private SymbolTable symbolTable;
     private List<Instruction> instructionList = new ArrayList<>();    // 用于存储生成的 IR 指令
-    private Stack<Symbol> symbolStack = new Stack<Symbol>();
+    private SemanticStack semanticStack;
 
     @Override
-    public void whenShift(Status currentStatus, Token currentToken) {
-        // TODO
-        symbolStack.push(new Symbol(currentToken));
+    public void registerHandlers(ActionHandlers handlers) {
+        // 产生式体的属性按下标从语义值栈中读取, E, A, B 的综合属性 (其值所在的 IRValue) 写入产生式头
+        // 其余产生式不产生 IR, 移入与接受时也无事可做
+
+        // S -> id = E
+        handlers.onReduce(6, (status, production) -> {
+            // 获取id的token和E的值
+            var name = namedVariable(semanticStack.get(0).getToken());          // 源代码中的变量名
+            var E_value = semanticStack.get(2).getIrValue();
+            instructionList.add(Instruction.createMov(name, E_value));
+        });
+
+        // S -> return E
+        handlers.onReduce(7, (status, production) ->
+            instructionList.add(Instruction.createRet(semanticStack.get(1).getIrValue())));
+
+        // E -> E + A
+        handlers.onReduce(8, (status, production) -> {
+            var tempReg = IRVariable.temp();
+            instructionList.add(Instruction.createAdd(tempReg, semanticStack.get(0).getIrValue(), semanticStack.get(2).getIrValue()));
+            semanticStack.head().setIrValue(tempReg);
+        });
+
+        // E -> E - A
+        handlers.onReduce(9, (status, production) -> {
+            var tempReg = IRVariable.temp();
+            instructionList.add(Instruction.createSub(tempReg, semanticStack.get(0).getIrValue(), semanticStack.get(2).getIrValue()));
+            semanticStack.head().setIrValue(tempReg);
+        });
+
+        // E -> A, A -> B
+        final ActionHandlers.ReduceHandler passThrough =
+            (status, production) -> semanticStack.head().setIrValue(semanticStack.get(0).getIrValue());
+        handlers.onReduce(10, passThrough);
+        handlers.onReduce(12, passThrough);
+
+        // A -> A * B
+        handlers.onReduce(11, (status, production) -> {
+            var tempReg = IRVariable.temp();
+            instructionList.add(Instruction.createMul(tempReg, semanticStack.get(0).getIrValue(), semanticStack.get(2).getIrValue()));
+            semanticStack.head().setIrValue(tempReg);
+        });
+
+        // B -> ( E )
+        handlers.onReduce(13, (status, production) -> semanticStack.head().setIrValue(semanticStack.get(1).getIrValue()));
+
+        // B -> id
+        handlers.onReduce(14, (status, production) ->
+            semanticStack.head().setIrValue(namedVariable(semanticStack.get(0).getToken())));
+
+        // B -> IntConst, 立即数
+        handlers.onReduce(15, (status, production) ->
+            semanticStack.head().setIrValue(IRImmediate.of(Integer.parseInt(semanticStack.get(0).getToken().getText()))));
     }
 
-    @Override
-    public void whenReduce(Status currentStatus, Production production) {
-        // TODO
-        switch (production.index()) {
-            case 6 -> {
-                // S -> id = E
-                // 获取id的token和E的值
-                var E_value = symbolStack.pop().getIrValue();
-                symbolStack.pop();
-                var id_token = symbolStack.pop().getToken();
-
-                var text = id_token.getText();
-                if (!symbolTable.has(text)) {
-                    throw new RuntimeException(text + " not found in symbol table");
-                }
-                var name = IRVariable.named(text);                                    // 源代码中的变量名
-                Instruction instruction = Instruction.createMov(name, E_value);
-                instructionList.add(instruction);
-                symbolStack.push(new Symbol());
-            }
-
-            case 7 -> {
-                // S -> return E
-                var E_value = symbolStack.pop().getIrValue();
-                symbolStack.pop();
-                Instruction instruction = Instruction.createRet(E_value);
-                instructionList.add(instruction);
-                symbolStack.push(new Symbol());
-            }
-
-            case 8 -> {
-                // E -> E + A
-                var A_value = symbolStack.pop().getIrValue();
-                symbolStack.pop();
-                var E_value = symbolStack.pop().getIrValue();
-                var tempReg = IRVariable.temp();
-                Instruction instruction = Instruction.createAdd(tempReg, E_value, A_value);
-                instructionList.add(instruction);
-                symbolStack.push(new Symbol(tempReg));
-            }
-
-            case 9 -> {
-                // E -> E - A
-                var A_value = symbolStack.pop().getIrValue();
-                symbolStack.pop();
-                var E_value = symbolStack.pop().getIrValue();
-                var tempReg = IRVariable.temp();
-                Instruction instruction = Instruction.createSub(tempReg, E_value, A_value);
-                instructionList.add(instruction);
-                symbolStack.push(new Symbol(tempReg));
-            }
-
-            case 10, 12 -> {
-                // E -> A, A -> B
-                var Right_value = symbolStack.pop().getIrValue();
-                symbolStack.push(new Symbol(Right_value));
-            }
-
-            case 11 -> {
-                // A -> A * B
-                var B_value = symbolStack.pop().getIrValue();
-                symbolStack.pop();
-                var A_value = symbolStack.pop().getIrValue();
-                var tempReg = IRVariable.temp();
-                Instruction instruction = Instruction.createMul(tempReg, A_value, B_value);
-                instructionList.add(instruction);
-                symbolStack.push(new Symbol(tempReg));
-            }
-
-            case 13 -> {
-                // B -> ( E )
-                symbolStack.pop();
-                var E_value = symbolStack.pop().getIrValue();
-                symbolStack.pop();
-                symbolStack.push(new Symbol(E_value));
-            }
-
-            case 14 -> {
-                // B -> id
-                var id_token = symbolStack.pop().getToken();
-                var text = id_token.getText();
-                if (!symbolTable.has(text)) {
-                    throw new RuntimeException(text + " not found in symbol table");
-                }
-                var name = IRVariable.named(text);
-                symbolStack.push(new Symbol(name));
-            }
-
-            case 15 -> {
-                // B -> IntConst
-                var int_token = symbolStack.pop().getToken();
-                // 立即数
-                var B_value = IRImmediate.of(Integer.parseInt(int_token.getText()));
-                symbolStack.push(new Symbol(B_value));
-            }
-
-            default -> {
-                int length = production.body().size();
-                while (length > 0) {
-                    symbolStack.pop();
-                    length--;
-                }
-                symbolStack.push(new Symbol());
-            }
-
+    /**
+     * @param id_token 标识符
+     * @return 该标识符对应的 IR 变量
+     */
+    private IRVariable namedVariable(Token id_token) {
+        var text = id_token.getText();
+        if (!symbolTable.has(text)) {
+            throw new RuntimeException(text + " not found in symbol table");
         }
+        return IRVariable.named(text);
     }
 
-
     @Override
-    public void whenAccept(Status currentStatus) {
+    public void setSymbolTable(SymbolTable table) {
         // TODO
-        symbolStack.clear();
+        this.symbolTable = table;
     }
 
     @Override
-    public void setSymbolTable(SymbolTable table) {
-        // TODO
-        this.symbolTable = table;
+    public void setSemanticStack(SemanticStack stack) {
+        this.semanticStack = stack;
     }
 
     public List<Instruction> getIR() {
@@ -161,4 +110,3 @@ public class IRGenerator implements ActionObserver {
         FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
     }
 }
-
@@ -2,62 +2,31 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.parser.table.Production;
-import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
-import java.util.Stack;
 
 // TODO: 实验三: 实现语义分析
-public class SemanticAnalyzer implements ActionObserver {
+public class SemanticAnalyzer implements AttributeObserver, HandlerObserver {
 
-    private Stack<Symbol> symbolStack = new Stack<Symbol>();
+    private SemanticStack semanticStack;
     private SymbolTable symbolTable;
 
     @Override
-    public void whenAccept(Status currentStatus) {
-        // TODO: 该过程在遇到 Accept 时要采取的代码动作
-        symbolStack.clear();
-    }
-
-    @Override
-    public void whenReduce(Status currentStatus, Production production) {
-        // TODO: 该过程在遇到 reduce production 时要采取的代码动作
-        int index = production.index();
-        switch (index) {
-            case 4:
-                // S -> D id
-                // 获取id的token和D的类型
-                Token id_token = symbolStack.pop().getToken();
-                SourceCodeType D_type = symbolStack.pop().getSourceCodeType();
-                // 将id的类型设置为D的类型
-                symbolTable.get(id_token.getText()).setType(D_type);
-                // 占位 S
-                symbolStack.push(new Symbol());
-                break;
-
-            case 5:
-                // D -> int
-                symbolStack.pop();
-                symbolStack.push(new Symbol(SourceCodeType.Int));
-                break;
-
-            default:
-                int length = production.body().size();
-                while (length > 0) {
-                    symbolStack.pop();
-                    length--;
-                }
-                symbolStack.push(new Symbol());
-                break;
-        }
-    }
-
-    @Override
-    public void whenShift(Status currentStatus, Token currentToken) {
-        // TODO: 该过程在遇到 shift 时要采取的代码动作
-        symbolStack.push(new Symbol(currentToken));
+    public void registerHandlers(ActionHandlers handlers) {
+        // 只关心声明语句的规约, 其余产生式没有需要检查的语义, 移入与接受时也无事可做
+
+        // S -> D id
+        handlers.onReduce(4, (status, production) -> {
+            // 获取id的token和D的类型
+            Token id_token = semanticStack.get(1).getToken();
+            SourceCodeType D_type = semanticStack.get(0).getSourceCodeType();
+            // 将id的类型设置为D的类型
+            symbolTable.get(id_token.getText()).setType(D_type);
+        });
+
+        // D -> int
+        handlers.onReduce(5, (status, production) -> semanticStack.head().setSourceCodeType(SourceCodeType.Int));
     }
 
     @Override
@@ -66,5 +35,9 @@ public class SemanticAnalyzer implements ActionObserver {
         // 如果需要使用符号表的话, 可以将它或者它的一部分信息存起来, 比如使用一个成员变量存储
         this.symbolTable = table;
     }
-}
 
+    @Override
+    public void setSemanticStack(SemanticStack stack) {
+        this.semanticStack = stack;
+    }
+}
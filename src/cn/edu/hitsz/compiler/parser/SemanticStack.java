@@ -0,0 +1,83 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.Arrays;
+
+/**
+ * 由驱动程序维护, 供各观察者共享的语义值栈
+ * <br>
+ * 栈与驱动程序的状态栈同步: 移入时压入词法单元, 规约时弹出产生式体并压入产生式头. 观察者在 whenReduce 中按产生式体内的下标读取各符号的属性,
+ * 并把综合属性写入 {@link #head()}; 驱动程序在所有观察者都处理完之后才真正弹栈与压栈, 所以每一步的栈维护只做一次, 与观察者数量无关.
+ * <br>
+ * 栈中的 Symbol 按槽位复用, 移入与规约都不分配新对象, 因此观察者不应在回调之外持有取得的 Symbol.
+ */
+final class SemanticStack {
+    /**
+     * 只在 whenReduce 中有效
+     *
+     * @param index 符号在待规约产生式体中的下标, 从 0 开始
+     * @return 该符号的属性
+     */
+    Symbol get(int index) {
+        return slots[base + index];
+    }
+
+    /**
+     * 只在 whenReduce 中有效
+     *
+     * @return 待规约产生式头的属性, 观察者将综合属性写入其中
+     */
+    Symbol head() {
+        return head;
+    }
+
+    void shift(Token token) {
+        slot(size++).set(token, null, null, null);
+    }
+
+    void beginReduce(Production production) {
+        base = size - production.body().size();
+        head.set(null, production.head(), null, null);
+    }
+
+    void endReduce() {
+        size = base;
+        final var slot = slot(size++);
+        slot.set(head.token, head.nonTerminal, head.irValue, head.sourceCodeType);
+    }
+
+    /**
+     * 错误恢复时弹出栈顶的若干符号, 并压入一个没有任何属性的非终结符代替被丢弃的部分
+     *
+     * @param size        保留的符号数量
+     * @param nonTerminal 代替被丢弃部分的非终结符
+     */
+    void recover(int size, NonTerminal nonTerminal) {
+        this.size = size;
+        slot(this.size++).set(null, nonTerminal, null, null);
+    }
+
+    void clear() {
+        size = 0;
+        base = 0;
+    }
+
+    private Symbol[] slots = new Symbol[0];
+    private final Symbol head = new Symbol();
+    private int size = 0;
+    private int base = 0;
+
+    private Symbol slot(int index) {
+        if (index == slots.length) {
+            final var oldLength = slots.length;
+            slots = Arrays.copyOf(slots, Math.max(64, oldLength * 2));
+            for (int idx = oldLength; idx < slots.length; idx++) {
+                slots[idx] = new Symbol();
+            }
+        }
+        return slots[index];
+    }
+}
@@ -0,0 +1,57 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+
+import java.util.Iterator;
+
+/**
+ * 由 {@link cn.edu.hitsz.compiler.parser.table.ParserGenerator} 针对某张 LR 分析表生成的专用语法分析器的基类
+ * <br>
+ * 生成的子类把每个状态展开为一个按 TokenKind 稠密编号分支的 switch, 移入的目标状态, 规约的产生式与其长度都是常量, 规约后的转移也是按状态分支的
+ * switch, 不再查询分析表. 观察者的通知仍经由 {@link SyntaxAnalyzer} 进行.
+ * <br>
+ * 专用分析器只处理正确的输入: 遇到错误时它把当前的状态栈与向前看符号保存在该类中并返回, 由 SyntaxAnalyzer 按分析表接着做错误恢复与后续分析.
+ */
+abstract class SpecializedParser {
+    /**
+     * @param fingerprint 生成时所用分析表的指纹, 见 {@link cn.edu.hitsz.compiler.parser.table.CompiledLRTable#fingerprint()}
+     */
+    protected SpecializedParser(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 从初态开始分析, 直到接受, 输入耗尽或遇到错误
+     *
+     * @param analyzer 用于通知观察者的驱动程序
+     * @param tokens   词法单元流
+     * @return 是否因遇到错误而中途返回, 此时可以通过 {@link #stack} 等取得出错时的分析状态
+     */
+    abstract boolean parse(SyntaxAnalyzer analyzer, Iterator<Token> tokens);
+
+    /**
+     * @return 生成时所用分析表的指纹
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 保存出错时的分析状态
+     */
+    protected final boolean fail(int[] stack, int top, Token token, int tokenIndex) {
+        this.stack = stack;
+        this.top = top;
+        this.token = token;
+        this.tokenIndex = tokenIndex;
+        return true;
+    }
+
+    //============================== 出错时的分析状态 ==============================
+    int[] stack;
+    int top;
+    Token token;
+    int tokenIndex;
+
+    private final long fingerprint;
+}
@@ -38,6 +38,16 @@ class Symbol {
         this(null, null, null, null);
     }
 
+    /**
+     * 覆盖该符号的所有属性, 用于复用语义值栈中的槽位
+     */
+    void set(Token token, NonTerminal nonTerminal, IRValue irValue, SourceCodeType sourceCodeType) {
+        this.token = token;
+        this.nonTerminal = nonTerminal;
+        this.irValue = irValue;
+        this.sourceCodeType = sourceCodeType;
+    }
+
     public boolean isToken() {
         return this.token != null;
     }
@@ -68,5 +78,13 @@ class Symbol {
         return sourceCodeType;
     }
 
+    public void setIrValue(IRValue irValue) {
+        this.irValue = irValue;
+    }
+
+    public void setSourceCodeType(SourceCodeType sourceCodeType) {
+        this.sourceCodeType = sourceCodeType;
+    }
+
 }
 
@@ -1,17 +1,22 @@
 package cn.edu.hitsz.compiler.parser;
 
-import cn.edu.hitsz.compiler.NotImplementedException;
+import cn.edu.hitsz.compiler.Diagnostic;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.PositionedTokenIterator;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
-import cn.edu.hitsz.compiler.parser.table.Action;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
 import cn.edu.hitsz.compiler.parser.table.LRTable;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
 
 //TODO: 实验二: 实现 LR 语法分析驱动程序
 
@@ -26,8 +31,23 @@ import java.util.Stack;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private List<Token> tokens = new ArrayList<>();
-    private LRTable lrTable;
+    private Iterator<Token> tokens;
+    private CompiledLRTable lrTable;
+    // 由分析表生成的专用分析器, 为 null 时按分析表分析
+    private SpecializedParser specializedParser = null;
+    // 只有注册了使用语义值栈的观察者时才维护语义值栈
+    private SemanticStack semanticStack = null;
+    // 按产生式融合后的各观察者处理函数, 注册新观察者后重新融合
+    private ActionHandlers.ShiftHandler shiftHandler = null;
+    private ActionHandlers.ReduceHandler[] reduceHandlers = null;
+    private ActionHandlers.AcceptHandler acceptHandler = null;
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    // 语法错误, 以及错误恢复时使用的同步符号
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private TokenBuffer tokenBuffer = null;
+    private static final String SYNC_TOKEN = "Semicolon";
 
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
@@ -42,6 +62,13 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        if (observer instanceof AttributeObserver attributeObserver) {
+            if (semanticStack == null) {
+                semanticStack = new SemanticStack();
+            }
+            attributeObserver.setSemanticStack(semanticStack);
+        }
+        reduceHandlers = null;
     }
 
     /**
@@ -51,8 +78,9 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
-            listener.whenShift(currentStatus, currentToken);
+        fuseHandlers();
+        if (shiftHandler != null) {
+            shiftHandler.handle(currentStatus, currentToken);
         }
     }
 
@@ -63,8 +91,10 @@ public class SyntaxAnalyzer {
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
-            listener.whenReduce(currentStatus, production);
+        fuseHandlers();
+        final var handler = reduceHandlers[production.index()];
+        if (handler != null) {
+            handler.handle(currentStatus, production);
         }
     }
 
@@ -74,9 +104,43 @@ public class SyntaxAnalyzer {
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
-            listener.whenAccept(currentStatus);
+        fuseHandlers();
+        if (acceptHandler != null) {
+            acceptHandler.handle(currentStatus);
+        }
+    }
+
+    /**
+     * 按注册顺序收集所有观察者的处理函数, 并按产生式融合. 一般的观察者对每个动作都会被调用,
+     * 按产生式登记处理函数的观察者只在它关心的动作与产生式上被调用, 两者之间的调用顺序仍与注册顺序一致.
+     */
+    private void fuseHandlers() {
+        if (reduceHandlers != null) {
+            return;
+        }
+
+        final var handlers = new ActionHandlers();
+        for (final var observer : observers) {
+            if (observer instanceof HandlerObserver handlerObserver) {
+                handlerObserver.registerHandlers(handlers);
+            } else {
+                handlers.onShift(observer::whenShift);
+                handlers.onAnyReduce(observer::whenReduce);
+                handlers.onAccept(observer::whenAccept);
+            }
         }
+
+        shiftHandler = handlers.fuseShift();
+        // 产生式编号为其在 grammar.txt 中的行号, 从 1 开始
+        reduceHandlers = handlers.fuseReduce(GrammarInfo.getProductionsInOrder().size() + 1);
+        acceptHandler = handlers.fuseAccept();
+    }
+
+    /**
+     * @return 分析过程中发现的所有语法错误, 按在源代码中的位置排列
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
     }
 
     public void loadTokens(Iterable<Token> tokens) {
@@ -84,16 +148,48 @@ public class SyntaxAnalyzer {
         // 你可以自行选择要如何存储词法单元, 譬如使用迭代器, 或是栈, 或是干脆使用一个 list 全存起来
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
-        for (var token : tokens) {
-            this.tokens.add(token);
-        }
+        // 这里只保存迭代器, 驱动程序每次移入后才拉取下一个 token, 因此既不复制 token 列表, 也能配合按需分析的词法分析器使用
+        this.tokens = tokens.iterator();
+        // 若 token 来自 TokenBuffer 或能给出位置的迭代器 (如按需分析的词法分析器), 报告错误时便能给出其在源代码中的位置
+        this.tokenBuffer = tokens instanceof TokenBuffer buffer ? buffer : null;
     }
 
     public void loadLRTable(LRTable table) {
         // TODO: 加载 LR 分析表
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
+        // 这里在加载时把表编译成稠密的 int 数组, 驱动程序的每一步便只做数组访问而不再查 HashMap
+        loadLRTable(table, CompiledLRTable.Layout.DENSE);
+    }
+
+    /**
+     * @param table  LR 分析表
+     * @param layout 编译后分析表的存储布局, 见 {@link CompiledLRTable}
+     */
+    public void loadLRTable(LRTable table, CompiledLRTable.Layout layout) {
+        loadLRTable(new CompiledLRTable(table, layout));
+    }
+
+    /**
+     * 直接使用已经编译好的分析表, 编译后的分析表不会被修改, 可以在多个驱动程序之间共享
+     *
+     * @param table 编译后的分析表
+     */
+    public void loadLRTable(CompiledLRTable table) {
         this.lrTable = table;
+        this.specializedParser = null;
+    }
+
+    /**
+     * 改用由 {@link cn.edu.hitsz.compiler.parser.table.ParserGenerator} 生成的专用分析器 {@link GeneratedParser} 分析,
+     * 出错后仍按分析表恢复. 需在 loadLRTable 之后调用, 且专用分析器必须是由所加载的分析表生成的
+     */
+    public void useGeneratedParser() {
+        final var parser = new GeneratedParser();
+        if (parser.fingerprint() != lrTable.fingerprint()) {
+            throw new RuntimeException("Generated parser does not match the loaded LR table, regenerate it with ParserGenerator");
+        }
+        this.specializedParser = parser;
     }
 
     public void run() {
@@ -102,57 +198,179 @@ public class SyntaxAnalyzer {
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
 
-        // 创建状态栈和符号栈并初始化
-        var statusStack = new Stack<Status>();
-        var symbolStack = new Stack<Symbol>();
-        statusStack.push(lrTable.getInit());
-        symbolStack.push(new Symbol(Token.eof()));
+        if (specializedParser != null) {
+            // 专用分析器出错后从出错处接着按分析表分析
+            if (specializedParser.parse(this, tokens)) {
+                final var parser = specializedParser;
+                runTable(parser.stack, parser.top, parser.token, parser.tokenIndex);
+            }
+            return;
+        }
+
+        // 状态栈只存状态编号, 用可增长的 int 数组实现. 符号栈只在有观察者需要时才由 semanticStack 维护, 所有观察者共享
+        final var statusStack = new int[INITIAL_STACK_SIZE];
+        statusStack[0] = lrTable.init();
+        runTable(statusStack, 0, tokens.next(), 0);
+    }
 
-        int i = 0;
-        for(; i<tokens.size(); i++){
+    /**
+     * 按分析表进行分析
+     *
+     * @param statusStack  状态栈
+     * @param top          栈顶下标
+     * @param currentToken 当前词法单元, 即唯一的向前看符号
+     * @param tokenIndex   向前看符号在 token 序列中的下标, 用于报告错误位置
+     */
+    private void runTable(int[] statusStack, int top, Token currentToken, int tokenIndex) {
+        int currentKind = currentToken.getKind().getIndex();
+        final int syncKind = TokenKind.fromString(SYNC_TOKEN).getIndex();
+        final int eofKind = TokenKind.eof().getIndex();
+        while (true) {
             // 当前状态
-            Status currentStatus = statusStack.peek();
-            // 当前词法单元
-            Token currentToken = tokens.get(i);
+            final int currentStatus = statusStack[top];
             // 获取当前动作
-            Action action = lrTable.getAction(currentStatus, currentToken);
+            final int action = lrTable.action(currentStatus, currentKind);
 
             // 根据动作类型进行处理
-            switch(action.getKind()){
-                case Shift:
-                    statusStack.push(action.getStatus());
-                    symbolStack.push(new Symbol(currentToken));
-                    // 通知观察者
-                    callWhenInShift(currentStatus, currentToken);
-                    break;
+            switch (CompiledLRTable.tagOf(action)) {
+                case CompiledLRTable.SHIFT:
+                    if (++top == statusStack.length) {
+                        statusStack = Arrays.copyOf(statusStack, statusStack.length * 2);
+                    }
+                    statusStack[top] = CompiledLRTable.valueOf(action);
+                    shifted(currentStatus, currentToken);
 
-                case Reduce:
-                    Production production = action.getProduction();
-                    int popLength = production.body().size();
-                    while(popLength > 0){
-                        statusStack.pop();
-                        symbolStack.pop();
-                        popLength--;
+                    if (!tokens.hasNext()) {
+                        return;
                     }
-                    // 通知观察者
-                    callWhenInReduce(currentStatus, production);
+                    currentToken = tokens.next();
+                    tokenIndex++;
+                    currentKind = currentToken.getKind().getIndex();
+                    break;
 
-                    // 处理非终结符
-                    symbolStack.push(new Symbol(production.head()));
-                    currentStatus = statusStack.peek();
-                    statusStack.push(lrTable.getGoto(currentStatus, production.head()));
+                case CompiledLRTable.REDUCE:
+                    final int production = CompiledLRTable.valueOf(action);
+                    top -= lrTable.bodyLength(production);
+                    reduced(currentStatus, production);
 
-                    i--;
+                    // 弹出产生式体后直接按产生式头转移, 向前看符号不被消耗
+                    final int gotoStatus = lrTable.goto_(statusStack[top], lrTable.head(production));
+                    if (++top == statusStack.length) {
+                        statusStack = Arrays.copyOf(statusStack, statusStack.length * 2);
+                    }
+                    statusStack[top] = gotoStatus;
                     break;
 
-                case Accept:
-                    callWhenInAccept(currentStatus);
+                case CompiledLRTable.ACCEPT:
+                    accepted(currentStatus);
                     return;
 
-                case Error:
-                    throw new NotImplementedException();
+                default:
+                    // 出错: 记录错误后以分号为同步符号做恐慌模式恢复
+                    diagnostics.add(new Diagnostic(Diagnostic.Kind.Syntax, offsetOf(tokenIndex),
+                        "Unexpected %s (token %d), expecting %s".formatted(
+                            describe(currentToken), tokenIndex, expectedKinds(currentStatus))));
+
+                    // 丢弃输入直到同步符号, 已到达输入末尾则无法再恢复
+                    while (currentKind != syncKind) {
+                        if (currentKind == eofKind || !tokens.hasNext()) {
+                            if (semanticStack != null) {
+                                semanticStack.clear();
+                            }
+                            return;
+                        }
+                        currentToken = tokens.next();
+                        tokenIndex++;
+                        currentKind = currentToken.getKind().getIndex();
+                    }
+
+                    // 弹出状态直到某个状态能转移到一个随后可以移入同步符号的非终结符, 把被丢弃的部分当作该非终结符
+                    int nonTerminal;
+                    while ((nonTerminal = lrTable.syncNonTerminal(statusStack[top], syncKind)) < 0) {
+                        if (top == 0) {
+                            if (semanticStack != null) {
+                                semanticStack.clear();
+                            }
+                            return;
+                        }
+                        top--;
+                    }
+                    final int recoveredStatus = lrTable.goto_(statusStack[top], nonTerminal);
+                    if (semanticStack != null) {
+                        semanticStack.recover(top, lrTable.nonTerminal(nonTerminal));
+                    }
+                    if (++top == statusStack.length) {
+                        statusStack = Arrays.copyOf(statusStack, statusStack.length * 2);
+                    }
+                    statusStack[top] = recoveredStatus;
+                    break;
             }
         }
 
     }
+
+    //============================== 各动作的语义值栈维护与观察者通知, 供专用分析器共用 ==============================
+
+    /**
+     * @param status 移入前的状态
+     * @param token  移入的词法单元
+     */
+    void shifted(int status, Token token) {
+        if (semanticStack != null) {
+            semanticStack.shift(token);
+        }
+        callWhenInShift(lrTable.status(status), token);
+    }
+
+    /**
+     * 观察者读取产生式体的属性并写入产生式头的综合属性, 之后再统一弹栈压栈
+     *
+     * @param status     规约前的状态
+     * @param production 规约的产生式编号
+     */
+    void reduced(int status, int production) {
+        if (semanticStack != null) {
+            semanticStack.beginReduce(lrTable.production(production));
+        }
+        callWhenInReduce(lrTable.status(status), lrTable.production(production));
+        if (semanticStack != null) {
+            semanticStack.endReduce();
+        }
+    }
+
+    /**
+     * @param status 接受时的状态
+     */
+    void accepted(int status) {
+        callWhenInAccept(lrTable.status(status));
+        if (semanticStack != null) {
+            semanticStack.clear();
+        }
+    }
+
+    /**
+     * @param tokenIndex 当前向前看符号的下标, 它总是最近一次从 tokens 中取出的 token
+     * @return 该 token 在源代码中的起始位置, 未知时返回 -1
+     */
+    private int offsetOf(int tokenIndex) {
+        if (tokenBuffer != null) {
+            return tokenIndex < tokenBuffer.size() ? tokenBuffer.startAt(tokenIndex) : -1;
+        }
+        return tokens instanceof PositionedTokenIterator positioned ? positioned.lastTokenBegin() : -1;
+    }
+
+    private static String describe(Token token) {
+        final var text = token.getText();
+        return text.isEmpty() ? token.getKind().getIdentifier() : "%s '%s'".formatted(token.getKind().getIdentifier(), text);
+    }
+
+    private String expectedKinds(int status) {
+        final var expected = new ArrayList<String>();
+        for (int kind = 0; kind < TokenKind.count(); kind++) {
+            if (lrTable.action(status, kind) != CompiledLRTable.ERROR) {
+                expected.add(TokenKind.fromIndex(kind).getIdentifier());
+            }
+        }
+        return String.join(", ", expected);
+    }
 }
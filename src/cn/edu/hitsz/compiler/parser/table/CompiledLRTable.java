@@ -0,0 +1,438 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 编译成稠密数组形式的 LR 分析表
+ * <br>
+ * {@link LRTable} 的每次查询都要以 TokenKind 或 NonTerminal 为键查 HashMap, 对驱动程序的每一步而言太慢了.
+ * 该类把 ACTION 与 GOTO 表展开为一维 int 数组, 分别以 {@code 状态 * 终结符数 + TokenKind 的稠密编号} 与
+ * {@code 状态 * 非终结符数 + 非终结符编号} 为下标, 使驱动程序的每一步只做数组访问.
+ * <br>
+ * ACTION 表中的动作编码为带标签的 int: 低 {@link #TAG_BITS} 位为动作种类, 其余位为移入的目标状态或规约的产生式编号.
+ * 错误动作编码为 0, 所以表中没有填写的格子天然就是错误. GOTO 表中没有填写的格子为 {@link #NO_GOTO}.
+ * <br>
+ * 该表可以由 {@link TableLoader} 读入的表或 {@link TableGenerator} 构造的表编译得到, 编译前需先加载好所有 TokenKind.
+ * <br>
+ * 稠密数组的大小是 状态数 × 符号数, 而其中绝大部分 ACTION 格子都是错误. {@link Layout#COMPRESSED} 布局像 yacc/bison 一样压缩该表:
+ * <ul>
+ *     <li>每个状态取出现最多的规约动作作为默认动作, 行中与默认动作相同的格子以及错误格子都不再存储.
+ *     这会让出错之前多做几次规约, 但错误仍会在移入之前被发现, 且发现错误的状态没有默认规约, 其期望的符号集合是准确的</li>
+ *     <li>剩余的格子用行位移法 (comb) 压进同一个一维数组: 每行有一个偏移 base, 该行第 k 列的格子存放在 base + k 处,
+ *     各行的格子互不重叠; 平行的 check 数组记录每个格子所属的行, 不属于当前行的格子即取默认动作</li>
+ *     <li>GOTO 表同样按行位移压缩, 但没有默认转移, 以便错误恢复仍能准确判断哪些转移存在</li>
+ * </ul>
+ * 两种布局的查询接口相同, 驱动程序无需区分.
+ */
+public final class CompiledLRTable {
+    //============================== 动作种类 ==============================
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    public static final int TAG_BITS = 2;
+    public static final int TAG_MASK = (1 << TAG_BITS) - 1;
+
+    /**
+     * GOTO 表中代表出错的状态
+     */
+    public static final int NO_GOTO = -1;
+
+    /**
+     * 表的存储布局
+     */
+    public enum Layout {DENSE, COMPRESSED}
+
+    /**
+     * @param table 要编译的 LR 分析表
+     */
+    public CompiledLRTable(LRTable table) {
+        this(table, Layout.DENSE);
+    }
+
+    /**
+     * @param table  要编译的 LR 分析表
+     * @param layout 存储布局
+     */
+    public CompiledLRTable(LRTable table, Layout layout) {
+        final var statusList = table.getStatusInIndexOrder();
+        final var nonTerminalList = table.getNonTerminals();
+
+        var statusCount = 0;
+        var productionCount = 0;
+        for (final var status : statusList) {
+            statusCount = Math.max(statusCount, status.index() + 1);
+            for (final var action : status.action().values()) {
+                if (action.getKind() == Action.ActionKind.Reduce) {
+                    productionCount = Math.max(productionCount, action.getProduction().index() + 1);
+                }
+            }
+        }
+
+        final var nonTerminalIndex = new HashMap<NonTerminal, Integer>();
+        for (final var nonTerminal : nonTerminalList) {
+            nonTerminalIndex.put(nonTerminal, nonTerminalIndex.size());
+        }
+
+        this.terminalCount = TokenKind.count();
+        this.nonTerminalCount = nonTerminalList.size();
+        this.init = table.getInit().index();
+        this.statuses = new Status[statusCount];
+        this.productions = new Production[productionCount];
+        this.bodyLength = new int[productionCount];
+        this.head = new int[productionCount];
+        this.nonTerminals = nonTerminalList.toArray(NonTerminal[]::new);
+        final var action = new int[statusCount * terminalCount];
+        final var goto_ = new int[statusCount * nonTerminalCount];
+        Arrays.fill(goto_, NO_GOTO);
+
+        for (final var status : statusList) {
+            final var row = status.index();
+            statuses[row] = status;
+
+            for (final var entry : status.action().entrySet()) {
+                action[row * terminalCount + entry.getKey().getIndex()] = encode(entry.getValue());
+
+                if (entry.getValue().getKind() == Action.ActionKind.Reduce) {
+                    final var production = entry.getValue().getProduction();
+                    final var headIndex = nonTerminalIndex.get(production.head());
+                    if (headIndex == null) {
+                        throw new RuntimeException("Unknown non-terminal " + production.head() + " in production " + production);
+                    }
+                    productions[production.index()] = production;
+                    bodyLength[production.index()] = production.body().size();
+                    head[production.index()] = headIndex;
+                }
+            }
+
+            for (final var entry : status.goto_().entrySet()) {
+                if (!entry.getValue().isError()) {
+                    goto_[row * nonTerminalCount + nonTerminalIndex.get(entry.getKey())] = entry.getValue().index();
+                }
+            }
+        }
+
+        this.fingerprint = fingerprint(action, goto_);
+        this.compressed = layout == Layout.COMPRESSED;
+        if (compressed) {
+            this.defaultAction = defaultReductions(action, statusCount, terminalCount);
+            this.packedAction = pack(action, statusCount, terminalCount, ERROR, defaultAction);
+            this.packedGoto = pack(goto_, statusCount, nonTerminalCount, NO_GOTO, null);
+            this.action = null;
+            this.goto_ = null;
+        } else {
+            this.defaultAction = null;
+            this.packedAction = null;
+            this.packedGoto = null;
+            this.action = action;
+            this.goto_ = goto_;
+        }
+    }
+
+    /**
+     * @param status    当前状态
+     * @param kindIndex 当前词法单元类型的稠密编号
+     * @return 编码后的动作
+     */
+    public int action(int status, int kindIndex) {
+        if (kindIndex >= terminalCount) {
+            return ERROR;
+        }
+        if (!compressed) {
+            return action[status * terminalCount + kindIndex];
+        }
+
+        final var slot = packedAction.base[status] + kindIndex;
+        return packedAction.check[slot] == status ? packedAction.entry[slot] : defaultAction[status];
+    }
+
+    /**
+     * @param status      当前状态
+     * @param nonTerminal 非终结符编号
+     * @return 应转移到的状态, 出错时为 {@link #NO_GOTO}
+     */
+    public int goto_(int status, int nonTerminal) {
+        if (!compressed) {
+            return goto_[status * nonTerminalCount + nonTerminal];
+        }
+
+        final var slot = packedGoto.base[status] + nonTerminal;
+        return packedGoto.check[slot] == status ? packedGoto.entry[slot] : NO_GOTO;
+    }
+
+    /**
+     * 为以同步符号进行的错误恢复寻找可以转移的非终结符: 在该状态下规约出这个非终结符之后, 下一步便能移入同步符号
+     *
+     * @param status    状态
+     * @param syncIndex 同步符号的 TokenKind 稠密编号
+     * @return 非终结符编号, 没有这样的非终结符时为 -1
+     */
+    public int syncNonTerminal(int status, int syncIndex) {
+        for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+            final var next = goto_(status, nonTerminal);
+            if (next != NO_GOTO && tagOf(action(next, syncIndex)) == SHIFT) {
+                return nonTerminal;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作种类
+     */
+    public static int tagOf(int action) {
+        return action & TAG_MASK;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 移入动作的目标状态, 或规约动作的产生式编号
+     */
+    public static int valueOf(int action) {
+        return action >>> TAG_BITS;
+    }
+
+    /**
+     * @return 起始状态
+     */
+    public int init() {
+        return init;
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度, 即规约时要弹出的状态数
+     */
+    public int bodyLength(int production) {
+        return bodyLength[production];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式头的非终结符编号
+     */
+    public int head(int production) {
+        return head[production];
+    }
+
+    /**
+     * @param index 状态编号
+     * @return 对应的状态对象, 供通知观察者使用
+     */
+    public Status status(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * @param index 产生式编号
+     * @return 对应的产生式对象, 供通知观察者使用
+     */
+    public Production production(int index) {
+        return productions[index];
+    }
+
+    /**
+     * @param index 非终结符编号
+     * @return 对应的非终结符
+     */
+    public NonTerminal nonTerminal(int index) {
+        return nonTerminals[index];
+    }
+
+    /**
+     * @return 状态数
+     */
+    public int statusCount() {
+        return statuses.length;
+    }
+
+    /**
+     * @return 非终结符数
+     */
+    public int nonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    /**
+     * 表内容的指纹, 与存储布局无关. 由分析表生成的代码可以借此检查自己是否与所加载的表一致
+     *
+     * @return 指纹
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    private long fingerprint(int[] action, int[] goto_) {
+        var hash = ((long) terminalCount << 32 | nonTerminalCount) * 31 + init;
+        for (final var table : new int[][]{action, goto_, bodyLength, head}) {
+            hash = hash * 0x100000001B3L ^ Arrays.hashCode(table);
+        }
+        return hash;
+    }
+
+    /**
+     * @return ACTION 与 GOTO 表所占的字节数 (不含供通知观察者使用的对象数组)
+     */
+    public int footprint() {
+        if (!compressed) {
+            return (action.length + goto_.length) * Integer.BYTES;
+        }
+        return (defaultAction.length + packedAction.size() + packedGoto.size()) * Integer.BYTES;
+    }
+
+    /**
+     * 行位移法压缩后的表. 每个 base 加上列数都不会越界, 所以查询时无需检查下标
+     *
+     * @param base  每行的偏移
+     * @param check 每个格子所属的行, 空闲格子为 -1
+     * @param entry 每个格子的值
+     */
+    private record PackedTable(int[] base, int[] check, int[] entry) {
+        int size() {
+            return base.length + check.length + entry.length;
+        }
+    }
+
+    /**
+     * @return 每个状态出现最多的规约动作, 次数相同时取产生式编号较小的; 没有规约动作的状态为 {@link #ERROR}
+     */
+    private static int[] defaultReductions(int[] action, int rows, int columns) {
+        final var result = new int[rows];
+        final var counts = new HashMap<Integer, Integer>();
+        for (int row = 0; row < rows; row++) {
+            counts.clear();
+            var best = ERROR;
+            var bestCount = 0;
+            for (int column = 0; column < columns; column++) {
+                final var cell = action[row * columns + column];
+                if (tagOf(cell) != REDUCE) {
+                    continue;
+                }
+
+                final int count = counts.merge(cell, 1, Integer::sum);
+                if (count > bestCount || (count == bestCount && cell < best)) {
+                    best = cell;
+                    bestCount = count;
+                }
+            }
+            result[row] = best;
+        }
+        return result;
+    }
+
+    /**
+     * 把稠密的二维表按行位移法压缩. 行按非空格子数从多到少依次放置, 每行取第一个不与已放置的格子重叠的偏移
+     *
+     * @param dense    稠密表
+     * @param empty    空格子的值, 不存储
+     * @param defaults 每行的默认值, 与之相同的格子也不存储; 可以为 null
+     */
+    private static PackedTable pack(int[] dense, int rows, int columns, int empty, int[] defaults) {
+        final var cells = new int[rows][];
+        for (int row = 0; row < rows; row++) {
+            final var rowDefault = defaults == null ? empty : defaults[row];
+            var count = 0;
+            final var columnsOfRow = new int[columns];
+            for (int column = 0; column < columns; column++) {
+                final var cell = dense[row * columns + column];
+                if (cell != rowDefault && cell != empty) {
+                    columnsOfRow[count++] = column;
+                }
+            }
+            cells[row] = Arrays.copyOf(columnsOfRow, count);
+        }
+
+        final var order = new Integer[rows];
+        for (int row = 0; row < rows; row++) {
+            order[row] = row;
+        }
+        Arrays.sort(order, (a, b) -> cells[b].length - cells[a].length);
+
+        final var base = new int[rows];
+        var check = new int[Math.max(16, columns)];
+        Arrays.fill(check, -1);
+        var maxBase = 0;
+        for (final int row : order) {
+            final var columnsOfRow = cells[row];
+            if (columnsOfRow.length == 0) {
+                continue;
+            }
+
+            var offset = 0;
+            while (true) {
+                final var end = offset + columns;
+                if (end > check.length) {
+                    final var oldLength = check.length;
+                    check = Arrays.copyOf(check, Math.max(end, oldLength * 2));
+                    Arrays.fill(check, oldLength, check.length, -1);
+                }
+
+                var fits = true;
+                for (final var column : columnsOfRow) {
+                    if (check[offset + column] != -1) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    break;
+                }
+                offset++;
+            }
+
+            base[row] = offset;
+            maxBase = Math.max(maxBase, offset);
+            for (final var column : columnsOfRow) {
+                check[offset + column] = row;
+            }
+        }
+
+        final var length = maxBase + columns;
+        final var entry = new int[length];
+        check = Arrays.copyOf(check, length);
+        for (int row = 0; row < rows; row++) {
+            for (final var column : cells[row]) {
+                entry[base[row] + column] = dense[row * columns + column];
+            }
+        }
+        return new PackedTable(base, check, entry);
+    }
+
+    private static int encode(Action action) {
+        return switch (action.getKind()) {
+            case Shift -> action.getStatus().index() << TAG_BITS | SHIFT;
+            case Reduce -> action.getProduction().index() << TAG_BITS | REDUCE;
+            case Accept -> ACCEPT;
+            case Error -> ERROR;
+        };
+    }
+
+    private final int terminalCount;
+    private final int nonTerminalCount;
+    private final int init;
+    private final long fingerprint;
+    private final boolean compressed;
+
+    /**
+     * 稠密布局下的 ACTION 与 GOTO 表
+     */
+    private final int[] action;
+    private final int[] goto_;
+
+    /**
+     * 压缩布局下每个状态的默认动作与压缩后的 ACTION 与 GOTO 表
+     */
+    private final int[] defaultAction;
+    private final PackedTable packedAction;
+    private final PackedTable packedGoto;
+    private final int[] bodyLength;
+    private final int[] head;
+    private final Status[] statuses;
+    private final Production[] productions;
+    private final NonTerminal[] nonTerminals;
+}
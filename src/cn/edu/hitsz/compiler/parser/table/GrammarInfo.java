@@ -50,6 +50,20 @@ public class GrammarInfo {
         }
     }
 
+    private GrammarInfo(List<Production> productionsInOrder, List<String> texts) {
+        for (int idx = 0; idx < productionsInOrder.size(); idx++) {
+            final var production = productionsInOrder.get(idx);
+            nonTerminals.putIfAbsent(production.head().getTermName(), production.head());
+            for (final var term : production.body()) {
+                if (term instanceof NonTerminal nonTerminal) {
+                    nonTerminals.putIfAbsent(nonTerminal.getTermName(), nonTerminal);
+                }
+            }
+            this.productionsInOrder.add(production);
+            productions.put(texts.get(idx), production);
+        }
+    }
+
     // 为了防止有人看不懂, 就不用枚举定义单例了
     // 顺手写个懒加载
     private static GrammarInfo instance = null;
@@ -62,6 +76,21 @@ public class GrammarInfo {
         return instance;
     }
 
+    /**
+     * 以分析表快照中保存的产生式初始化, 不再读取语法文件. 已经初始化过时保持原样
+     *
+     * @param productionsInOrder 按行号排列的产生式
+     * @param texts              各产生式在语法文件中去掉分号后的文本
+     * @return 实际使用的按行号排列的产生式
+     */
+    static List<Production> preload(List<Production> productionsInOrder, List<String> texts) {
+        if (instance == null) {
+            instance = new GrammarInfo(productionsInOrder, texts);
+        }
+
+        return getProductionsInOrder();
+    }
+
     public static Map<String, NonTerminal> getNonTerminals() {
         return Collections.unmodifiableMap(getInstance().nonTerminals);
     }
@@ -0,0 +1,178 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 根据 LR 分析表生成专用语法分析器 ({@code cn.edu.hitsz.compiler.parser.GeneratedParser}) 的 Java 源代码
+ * <br>
+ * 对固定的文法, 分析表从不改变, 但驱动程序每一步都要查表并按动作种类分派. 生成的分析器把每个状态展开为按 TokenKind 稠密编号分支的 switch,
+ * 同一动作的各个终结符合并为一组 case; 规约直接写出产生式编号与要弹出的状态数, 规约后的转移则是每个非终结符一个按状态分支的静态方法.
+ * 这样的代码分支模式固定, 便于 JIT 内联与分支预测.
+ * <br>
+ * 生成的源代码需要放入源码树重新编译, 之后通过 {@code SyntaxAnalyzer.useGeneratedParser} 启用. 生成的类记录了分析表的指纹,
+ * 与运行时加载的分析表不一致时会拒绝使用, 此时应重新生成.
+ */
+public class ParserGenerator {
+    /**
+     * @param table 分析表, 编译前需先加载好所有 TokenKind
+     */
+    public ParserGenerator(LRTable table) {
+        this.table = new CompiledLRTable(table);
+    }
+
+    /**
+     * 生成源代码并写入文件
+     *
+     * @param path 源文件路径, 一般为 src/cn/edu/hitsz/compiler/parser/GeneratedParser.java
+     */
+    public void dump(String path) {
+        FileUtils.writeLines(path, generate());
+    }
+
+    /**
+     * @return 生成的源代码的各行
+     */
+    public List<String> generate() {
+        lines.clear();
+        emit(0, "package cn.edu.hitsz.compiler.parser;");
+        emit(0, "");
+        emit(0, "import cn.edu.hitsz.compiler.lexer.Token;");
+        emit(0, "");
+        emit(0, "import java.util.Arrays;");
+        emit(0, "import java.util.Iterator;");
+        emit(0, "");
+        emit(0, "/**");
+        emit(0, " * 由 {@link cn.edu.hitsz.compiler.parser.table.ParserGenerator} 根据 LR 分析表生成的专用语法分析器, 请勿手动修改");
+        emit(0, " */");
+        emit(0, "final class GeneratedParser extends SpecializedParser {");
+        emit(1, "GeneratedParser() {");
+        emit(2, "super(0x%016XL);".formatted(table.fingerprint()));
+        emit(1, "}");
+        emit(0, "");
+        emitParse();
+        for (int nonTerminal = 0; nonTerminal < table.nonTerminalCount(); nonTerminal++) {
+            emit(0, "");
+            emitGoto(nonTerminal);
+        }
+        emit(0, "}");
+        return new ArrayList<>(lines);
+    }
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    private final CompiledLRTable table;
+    private final List<String> lines = new ArrayList<>();
+
+    private void emit(int indent, String line) {
+        lines.add(line.isEmpty() ? line : "    ".repeat(indent) + line);
+    }
+
+    private void emitParse() {
+        emit(1, "@Override");
+        emit(1, "boolean parse(SyntaxAnalyzer analyzer, Iterator<Token> tokens) {");
+        emit(2, "int[] stack = new int[%d];".formatted(INITIAL_STACK_SIZE));
+        emit(2, "int top = 0;");
+        emit(2, "stack[0] = %d;".formatted(table.init()));
+        emit(2, "Token token = tokens.next();");
+        emit(2, "int kind = token.getKind().getIndex();");
+        emit(2, "int tokenIndex = 0;");
+        emit(2, "while (true) {");
+        emit(3, "final int status = stack[top];");
+        emit(3, "final int next;");
+        emit(3, "switch (status) {");
+        for (int status = 0; status < table.statusCount(); status++) {
+            if (table.status(status) != null) {
+                emitStatus(status);
+            }
+        }
+        emit(4, "default:");
+        emit(5, "return fail(stack, top, token, tokenIndex);");
+        emit(3, "}");
+        emit(0, "");
+        emit(3, "if (++top == stack.length) {");
+        emit(4, "stack = Arrays.copyOf(stack, stack.length * 2);");
+        emit(3, "}");
+        emit(3, "stack[top] = next;");
+        emit(3, "analyzer.shifted(status, token);");
+        emit(3, "if (!tokens.hasNext()) {");
+        emit(4, "return false;");
+        emit(3, "}");
+        emit(3, "token = tokens.next();");
+        emit(3, "kind = token.getKind().getIndex();");
+        emit(3, "tokenIndex++;");
+        emit(2, "}");
+        emit(1, "}");
+    }
+
+    private void emitStatus(int status) {
+        // 按动作合并终结符, 保持终结符编号的顺序
+        final var groups = new LinkedHashMap<Integer, List<Integer>>();
+        for (int kind = 0; kind < TokenKind.count(); kind++) {
+            final var action = table.action(status, kind);
+            if (action != CompiledLRTable.ERROR) {
+                groups.computeIfAbsent(action, a -> new ArrayList<>()).add(kind);
+            }
+        }
+
+        emit(4, "case %d:".formatted(status));
+        emit(5, "switch (kind) {");
+        var hasShift = false;
+        for (final var group : groups.entrySet()) {
+            for (final var kind : group.getValue()) {
+                emit(6, "case %d: // %s".formatted(kind, TokenKind.fromIndex(kind).getIdentifier()));
+            }
+
+            final int action = group.getKey();
+            final var value = CompiledLRTable.valueOf(action);
+            switch (CompiledLRTable.tagOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    hasShift = true;
+                    emit(7, "next = %d;".formatted(value));
+                    emit(7, "break;");
+                }
+                case CompiledLRTable.REDUCE -> {
+                    emit(7, "// reduce " + table.production(value));
+                    emit(7, "top -= %d;".formatted(table.bodyLength(value)));
+                    emit(7, "analyzer.reduced(status, %d);".formatted(value));
+                    emit(7, "stack[top + 1] = goto%d(stack[top]);".formatted(table.head(value)));
+                    emit(7, "top++;");
+                    emit(7, "continue;");
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    emit(7, "analyzer.accepted(status);");
+                    emit(7, "return false;");
+                }
+                default -> throw new RuntimeException("Unknown action " + action);
+            }
+        }
+        emit(6, "default:");
+        emit(7, "return fail(stack, top, token, tokenIndex);");
+        emit(5, "}");
+        // 没有移入动作时内层 switch 不会正常结束, 其后的 break 不可达
+        if (hasShift) {
+            emit(5, "break;");
+        }
+    }
+
+    private void emitGoto(int nonTerminal) {
+        emit(1, "// " + table.nonTerminal(nonTerminal));
+        emit(1, "private static int goto%d(int status) {".formatted(nonTerminal));
+        emit(2, "switch (status) {");
+        for (int status = 0; status < table.statusCount(); status++) {
+            final var next = table.goto_(status, nonTerminal);
+            if (next != CompiledLRTable.NO_GOTO) {
+                emit(3, "case %d:".formatted(status));
+                emit(4, "return %d;".formatted(next));
+            }
+        }
+        emit(3, "default:");
+        emit(4, "return %d;".formatted(CompiledLRTable.NO_GOTO));
+        emit(2, "}");
+        emit(1, "}");
+    }
+}
@@ -4,16 +4,35 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 除 SLR(1) 外, 也可以构造规范 LR(1) 分析表, 或在 LR(0) 项目集族上用 DeRemer-Pennello 算法计算向前看符号得到 LALR(1) 分析表.
+ * 后者与按核心合并规范 LR(1) 项目集族得到的表相同, 但状态数与 LR(0) 一样少, 且不需要先构造规范 LR(1) 项目集族.
  */
 public class TableGenerator {
+    /**
+     * 分析表的种类
+     */
+    public enum Mode {SLR, LR1, LALR}
+
     public TableGenerator() {
+        this(Mode.SLR);
+    }
+
+    /**
+     * @param mode 要构造的分析表的种类
+     */
+    public TableGenerator(Mode mode) {
+        this.mode = mode;
         this.productions = GrammarInfo.getProductionsInOrder();
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
         this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
@@ -27,11 +46,35 @@ public class TableGenerator {
      * 主体方法
      */
     public void run() {
+        run(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool 用于并行构造 LR(0) 项目集族的线程池
+     */
+    public void run(ForkJoinPool pool) {
+        indexProductions();
+        calcNullable();
         calcFirst();
         calcFollow();
-        constructDFA();
-        dumpItems();
-        genTable();
+        switch (mode) {
+            case SLR -> {
+                constructDFA(pool);
+                dumpItems();
+                genTable(this::followLookahead);
+            }
+            case LALR -> {
+                constructDFA(pool);
+                dumpItems();
+                calcLALRLookahead();
+                genTable(this::lalrLookahead);
+            }
+            case LR1 -> {
+                constructLR1DFA();
+                dumpItems();
+                genLR1Table();
+            }
+        }
     }
 
     /**
@@ -41,7 +84,8 @@ public class TableGenerator {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
             lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
+            final var items = mode == Mode.LR1 ? includingLR1.get(status) : including.get(status);
+            for (final var item : items) {
                 lines.add("    " + item);
             }
         }
@@ -56,124 +100,206 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Mode mode;
     private final List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    //============================== FIRST, FOLLOW 与可空性 ==============================
+    // 非终结符按稠密编号索引, 终结符集合以 TokenKind 的稠密编号为下标存放在 BitSet 中
 
-    private final Set<Term> visited = new HashSet<>();
+    private final Map<NonTerminal, Integer> nonTerminalIds = new HashMap<>();
+    private final List<List<Production>> productionsByHead = new ArrayList<>();
+    private boolean[] nullable;
+    private BitSet[] first;
+    private BitSet[] follow;
+    private List<Set<TokenKind>> followKinds;
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 为非终结符编号, 并按产生式头建立索引
      */
-    private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
+    private void indexProductions() {
+        for (final var nonTerminal : nonTerminals) {
+            nonTerminalIds.put(nonTerminal, nonTerminalIds.size());
+            productionsByHead.add(new ArrayList<>());
         }
+        for (final var production : productions) {
+            productionsByHead.get(nonTerminalIds.get(production.head())).add(production);
+        }
+    }
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
+    /**
+     * 计算所有可以推导出空串的非终结符 <br>
+     * 对每条产生式记录其体中尚未确定可空的符号数, 某个非终结符被确定为可空时只更新包含它的产生式, 计数归零时产生式头即为可空
+     */
+    private void calcNullable() {
+        nullable = new boolean[nonTerminalIds.size()];
+        final var remaining = new int[productions.size()];
+        final var occurrences = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < nonTerminalIds.size(); idx++) {
+            occurrences.add(new ArrayList<>());
+        }
+
+        final var worklist = new ArrayDeque<Integer>();
+        for (int idx = 0; idx < productions.size(); idx++) {
+            final var production = productions.get(idx);
+            for (final var term : production.body()) {
+                if (term instanceof NonTerminal nonTerminal) {
+                    occurrences.get(nonTerminalIds.get(nonTerminal)).add(idx);
+                    remaining[idx]++;
+                } else {
+                    // 含有终结符的产生式不可能推导出空串
+                    remaining[idx] = Integer.MIN_VALUE;
+                }
+            }
+            if (remaining[idx] == 0) {
+                markNullable(production.head(), worklist);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            for (final var idx : occurrences.get(worklist.pollFirst())) {
+                if (--remaining[idx] == 0) {
+                    markNullable(productions.get(idx).head(), worklist);
+                }
+            }
         }
+    }
+
+    private void markNullable(NonTerminal nonTerminal, Deque<Integer> worklist) {
+        final var id = nonTerminalIds.get(nonTerminal);
+        if (!nullable[id]) {
+            nullable[id] = true;
+            worklist.add(id);
+        }
+    }
 
+    private boolean isNullable(Term term) {
+        return term instanceof NonTerminal nonTerminal && nullable[nonTerminalIds.get(nonTerminal)];
     }
 
     /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
+     * 计算所有非终结符的 first 集合 <br>
+     * 对 A -> X1 X2 ... Xn, 直到第一个不可空的 Xi 为止, 终结符直接加入 first(A), 非终结符 Xi 则建立 first(Xi) ⊆ first(A) 的约束,
+     * 随后以工作表迭代到不动点. 左递归只是约束图中的环, 不会导致结果不完整.
      */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
+    private void calcFirst() {
+        final var count = nonTerminalIds.size();
+        first = new BitSet[count];
+        final var supersets = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < count; idx++) {
+            first[idx] = new BitSet();
+            supersets.add(new ArrayList<>());
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
         for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
+            final var head = nonTerminalIds.get(production.head());
+            for (final var term : production.body()) {
+                if (term instanceof TokenKind tokenKind) {
+                    first[head].set(tokenKind.getIndex());
+                    break;
+                }
+                supersets.get(nonTerminalIds.get((NonTerminal) term)).add(head);
+                if (!isNullable(term)) {
+                    break;
                 }
             }
         }
 
-        first.put(nonTerminal, result);
-        return result;
+        propagate(first, supersets);
     }
 
-
     /**
-     * 计算所有非终结符的 follow 集合
+     * 计算所有非终结符的 follow 集合 <br>
+     * 对 A -> α B β, first(β) 直接加入 follow(B); 若 β 可空, 再建立 follow(A) ⊆ follow(B) 的约束, 随后以工作表迭代到不动点
      */
     private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+        final var count = nonTerminalIds.size();
+        follow = new BitSet[count];
+        final var supersets = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < count; idx++) {
+            follow[idx] = new BitSet();
+            supersets.add(new ArrayList<>());
+        }
+        follow[nonTerminalIds.get(productions.get(0).head())].set(TokenKind.eof().getIndex());
+
+        for (final var production : productions) {
+            final var head = nonTerminalIds.get(production.head());
+            final var body = production.body();
+            for (int i = 0; i < body.size(); i++) {
+                if (!(body.get(i) instanceof NonTerminal nonTerminal)) {
+                    continue;
+                }
+
+                final var id = nonTerminalIds.get(nonTerminal);
+                final var rest = body.subList(i + 1, body.size());
+                follow[id].or(firstOfSequence(rest));
+                if (rest.stream().allMatch(this::isNullable)) {
+                    supersets.get(head).add(id);
+                }
+            }
         }
 
+        propagate(follow, supersets);
+
         // 对于找完所有产生式了都还没没有 follow 的非终结符
         // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+        followKinds = new ArrayList<>();
+        for (final var set : follow) {
+            if (set.isEmpty()) {
+                set.set(TokenKind.eof().getIndex());
+            }
+            followKinds.add(toKinds(set));
+        }
     }
 
     /**
-     * 递归计算给定非终结符的 follow 集合
-     *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * 在 "sets[x] ⊆ sets[y], 对所有 y ∈ supersets[x]" 的约束下, 以工作表把各集合扩大到不动点
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
+    private static void propagate(BitSet[] sets, List<List<Integer>> supersets) {
+        final var worklist = new ArrayDeque<Integer>();
+        final var queued = new boolean[sets.length];
+        for (int idx = 0; idx < sets.length; idx++) {
+            worklist.add(idx);
+            queued[idx] = true;
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
-
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
-
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
+        while (!worklist.isEmpty()) {
+            final int x = worklist.pollFirst();
+            queued[x] = false;
+            for (final int y : supersets.get(x)) {
+                final var before = sets[y].cardinality();
+                sets[y].or(sets[x]);
+                if (sets[y].cardinality() != before && !queued[y]) {
+                    worklist.add(y);
+                    queued[y] = true;
                 }
             }
+        }
+    }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
-                }
+    /**
+     * @param sequence 文法符号串 β
+     * @return first(β), 不含空串
+     */
+    private BitSet firstOfSequence(List<Term> sequence) {
+        final var result = new BitSet();
+        for (final var term : sequence) {
+            if (term instanceof TokenKind tokenKind) {
+                result.set(tokenKind.getIndex());
+                return result;
+            }
+            result.or(first[nonTerminalIds.get((NonTerminal) term)]);
+            if (!isNullable(term)) {
+                return result;
             }
         }
+        return result;
+    }
 
-        follow.put(nonTerminal, result);
+    private static Set<TokenKind> toKinds(BitSet set) {
+        final var result = new LinkedHashSet<TokenKind>();
+        set.stream().forEach(kind -> result.add(TokenKind.fromIndex(kind)));
         return result;
     }
 
@@ -239,129 +365,244 @@ public class TableGenerator {
         }
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    //============================== LR(0) 规范项目集族 ==============================
+    // 项目以稠密编号表示: 产生式列表中第 p 条产生式点在 dot 处的项目编号为 itemBase[p] + dot.
+    // 项目集的闭包完全由其核决定, 所以状态以排好序的核来标识, 闭包按核缓存, 只计算一次.
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 项目集的核: 升序排列的项目编号, 并预先算好哈希值
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private record Kernel(int[] items, int hash) {
+        Kernel(int[] items) {
+            this(items, Arrays.hashCode(items));
+        }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Kernel other && hash == other.hash && Arrays.equals(items, other.items);
+        }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
 
+    private int[] itemBase;
+    private Item[] itemOf;
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * 项目中点后面的文法符号编号, 点在末尾时为 -1
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private int[] symbolAfterDot;
+    /**
+     * 文法符号编号到文法符号, 非终结符在前, 终结符在后
+     */
+    private Term[] symbols;
+    /**
+     * 文法符号编号到以其为头的所有产生式的初始项目, 终结符对应空数组
+     */
+    private int[][] initialItems;
+
+    private final Map<Kernel, int[]> closures = new ConcurrentHashMap<>();
+    private final Map<Status, Set<Item>> including = new HashMap<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+
+    /**
+     * LR(0) 自动机的转移函数, 在构造项目集族时一并记录
+     */
+    private final Map<Status, Map<Term, Status>> transitions = new HashMap<>();
+
+    private Status transit(Status from, Term term) {
+        return transitions.get(from).get(term);
     }
 
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
-     *
-     * @param sourceItem 项集 I
-     * @return 闭包
+     * 为所有项目与文法符号编号
      */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
+    private void indexItems() {
+        final var terms = new ArrayList<Term>();
+        terms.addAll(nonTerminals);
+        terms.addAll(terminals);
+        symbols = terms.toArray(Term[]::new);
+        final var symbolIds = new HashMap<Term, Integer>();
+        for (final var term : symbols) {
+            symbolIds.put(term, symbolIds.size());
+        }
 
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+        itemBase = new int[productions.size()];
+        var itemCount = 0;
+        for (int idx = 0; idx < productions.size(); idx++) {
+            itemBase[idx] = itemCount;
+            itemCount += productions.get(idx).body().size() + 1;
         }
 
-        return result;
+        itemOf = new Item[itemCount];
+        symbolAfterDot = new int[itemCount];
+        final var initialLists = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < symbols.length; idx++) {
+            initialLists.add(new ArrayList<>());
+        }
+        for (int idx = 0; idx < productions.size(); idx++) {
+            final var production = productions.get(idx);
+            final var body = production.body();
+            for (int dot = 0; dot <= body.size(); dot++) {
+                itemOf[itemBase[idx] + dot] = new Item(production, dot);
+                symbolAfterDot[itemBase[idx] + dot] = dot < body.size() ? symbolIds.get(body.get(dot)) : -1;
+            }
+            initialLists.get(symbolIds.get(production.head())).add(itemBase[idx]);
+        }
+
+        initialItems = new int[symbols.length][];
+        for (int idx = 0; idx < symbols.length; idx++) {
+            initialItems[idx] = initialLists.get(idx).stream().mapToInt(Integer::intValue).toArray();
+        }
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
+     * 构造出所有状态并维护状态与项集之间的对应关系以及状态之间的转移
+     * <br>
+     * 按层进行 BFS: 同一层中各个核的闭包与后继核互不依赖, 在线程池中并行求出; 随后按层内顺序与文法符号顺序依次为新的核编号,
+     * 因此状态编号与逐个展开的 BFS 相同, 不受调度顺序影响.
      *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
+     * @param pool 用于展开项目集的线程池
      */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
+    private void constructDFA(ForkJoinPool pool) {
+        indexItems();
+
+        final var statusOf = new HashMap<Kernel, Status>();
+        final var init = new Kernel(new int[]{itemBase[0]});
+        statusOf.put(init, Status.create(0));
+        allStatusInIndexOrder.add(statusOf.get(init));
+
+        var frontier = List.of(init);
+        while (!frontier.isEmpty()) {
+            final var tasks = new ArrayList<ForkJoinTask<Kernel[]>>();
+            for (final var kernel : frontier) {
+                tasks.add(pool.submit(() -> successors(kernel)));
+            }
 
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+            final var next = new ArrayList<Kernel>();
+            for (int idx = 0; idx < frontier.size(); idx++) {
+                final var successors = tasks.get(idx).join();
+                final var row = new HashMap<Term, Status>();
+                for (int symbol = 0; symbol < symbols.length; symbol++) {
+                    final var kernel = successors[symbol];
+                    if (kernel == null) {
+                        continue;
+                    }
+
+                    var to = statusOf.get(kernel);
+                    if (to == null) {
+                        to = Status.create(allStatusInIndexOrder.size());
+                        allStatusInIndexOrder.add(to);
+                        statusOf.put(kernel, to);
+                        next.add(kernel);
+                    }
+                    row.put(symbols[symbol], to);
+                }
+                transitions.put(statusOf.get(frontier.get(idx)), row);
+            }
+            frontier = next;
+        }
+
+        for (final var entry : statusOf.entrySet()) {
+            final var items = new LinkedHashSet<Item>();
+            for (final var item : closures.get(entry.getKey())) {
+                items.add(itemOf[item]);
+            }
+            including.put(entry.getValue(), items);
+        }
     }
 
     /**
-     * 构造 LR(0) 规范项目集族
+     * 相当于理论课中的 GO(I, X) 函数 (转移函数), 一次对所有文法符号求出
      *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
+     * @param kernel 当前项集 I 的核
+     * @return 以文法符号编号为下标的后继项目集的核, 后继项目集为空时为 null
      */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
+    private Kernel[] successors(Kernel kernel) {
+        final var closure = closures.computeIfAbsent(kernel, this::constructClosure);
+
+        // 闭包中的项目是升序的, 其后继项也是升序的, 所以按符号分桶后每个桶就是排好序的核
+        final var counts = new int[symbols.length];
+        for (final var item : closure) {
+            if (symbolAfterDot[item] >= 0) {
+                counts[symbolAfterDot[item]]++;
+            }
+        }
 
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
+        final var buckets = new int[symbols.length][];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            if (counts[symbol] > 0) {
+                buckets[symbol] = new int[counts[symbol]];
+                counts[symbol] = 0;
+            }
+        }
+        for (final var item : closure) {
+            final var symbol = symbolAfterDot[item];
+            if (symbol >= 0) {
+                buckets[symbol][counts[symbol]++] = item + 1;
+            }
+        }
 
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
+        final var result = new Kernel[symbols.length];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            if (buckets[symbol] != null) {
+                result[symbol] = new Kernel(buckets[symbol]);
+            }
+        }
+        return result;
+    }
 
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
+    /**
+     * 构造核的闭包, 相当于理论课中的 CLOSURE(I) 函数. 每个非终结符只展开一次.
+     *
+     * @param kernel 项集 I 的核
+     * @return 闭包中所有项目的编号, 升序
+     */
+    private int[] constructClosure(Kernel kernel) {
+        final var result = new BitSet(itemOf.length);
+        final var expanded = new BitSet(symbols.length);
+        final var unexpanded = new ArrayDeque<Integer>();
+        for (final var item : kernel.items()) {
+            result.set(item);
+            unexpanded.add(item);
+        }
 
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+        while (!unexpanded.isEmpty()) {
+            final var symbol = symbolAfterDot[unexpanded.pollFirst()];
+            if (symbol < 0 || expanded.get(symbol)) {
+                continue;
+            }
+            expanded.set(symbol);
+            for (final var item : initialItems[symbol]) {
+                if (!result.get(item)) {
+                    result.set(item);
+                    unexpanded.add(item);
                 }
             }
         }
 
-        return new ArrayList<>(result);
+        return result.stream().toArray();
+    }
+
+    /**
+     * @param head 头部符号
+     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     */
+    private Stream<Production> getProductionsByHead(Term head) {
+        if (head instanceof NonTerminal nonTerminal) {
+            return productionsByHead.get(nonTerminalIds.get(nonTerminal)).stream();
+        }
+        return Stream.empty();
     }
 
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
+     *
+     * @param lookahead 给出在某状态中按某个项目规约时的向前看符号集合
      */
-    private void genTable() {
+    private void genTable(BiFunction<Status, Item, Set<TokenKind>> lookahead) {
         // 依索引顺序对每个状态的每个项目
         for (final var status : allStatusInIndexOrder) {
             for (final var item : including.get(status)) {
@@ -376,17 +617,16 @@ public class TableGenerator {
                         status.setAction(TokenKind.eof(), Action.accept());
                     } else {
                         // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
+                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于向前看符号集合 (SLR 中即 follow(A)) 内的文法符号都应该规约 A
                         final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
+                        for (final var a : lookahead.apply(status, item)) {
                             status.setAction(a, Action.reduce(production));
                         }
                     }
 
                 } else {
                     final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
+                    final var next = transit(status, symbol);
 
                     if (symbol instanceof TokenKind tokenKind) {
                         // A -> alpha . a beta
@@ -407,4 +647,313 @@ public class TableGenerator {
 
     // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
     // 如果有冲突, 它们会抛出 RuntimeException
+
+    //============================== LALR(1): DeRemer-Pennello ==============================
+
+    private Set<TokenKind> followLookahead(Status status, Item item) {
+        return followKinds.get(nonTerminalIds.get(item.production().head()));
+    }
+
+    /**
+     * LR(0) 自动机中的一条非终结符转移 (p, A)
+     */
+    private record Transition(Status from, NonTerminal symbol) {
+    }
+
+    /**
+     * LALR(1) 向前看符号, LA(q, A -> ω)
+     */
+    private final Map<Status, Map<Production, Set<TokenKind>>> lalrLookahead = new HashMap<>();
+
+    private Set<TokenKind> lalrLookahead(Status status, Item item) {
+        return lalrLookahead.getOrDefault(status, Map.of()).getOrDefault(item.production(), Set.of());
+    }
+
+    /**
+     * 按 DeRemer 与 Pennello 的算法计算 LALR(1) 向前看符号:
+     * <ul>
+     *     <li>DR(p, A): 从 GO(p, A) 可以直接移入的终结符</li>
+     *     <li>Read(p, A) = DR(p, A) ∪ ⋃{Read(r, C) | (p, A) reads (r, C)}, 其中 r = GO(p, A) 且 C 可空</li>
+     *     <li>Follow(p, A) = Read(p, A) ∪ ⋃{Follow(p', B) | (p, A) includes (p', B)}, 即 B -> β A γ, γ 可空且 p' 经 β 到达 p</li>
+     *     <li>LA(q, A -> ω) = ⋃{Follow(p, A) | p 经 ω 到达 q}</li>
+     * </ul>
+     * 两次闭包都用 digraph 算法在强连通分量上一次求出.
+     */
+    private void calcLALRLookahead() {
+        // 所有非终结符转移
+        final var ntTransitions = new ArrayList<Transition>();
+        final var transitionIndex = new HashMap<Transition, Integer>();
+        for (final var status : allStatusInIndexOrder) {
+            for (final var term : transitions.get(status).keySet()) {
+                if (term instanceof NonTerminal nonTerminal) {
+                    final var transition = new Transition(status, nonTerminal);
+                    transitionIndex.put(transition, ntTransitions.size());
+                    ntTransitions.add(transition);
+                }
+            }
+        }
+
+        final var count = ntTransitions.size();
+        final var argumentProduction = productions.get(0);
+        final var directRead = new ArrayList<BitSet>();
+        final var reads = new ArrayList<List<Integer>>();
+        final var includes = new ArrayList<List<Integer>>();
+        for (final var transition : ntTransitions) {
+            final var target = transit(transition.from(), transition.symbol());
+            final var dr = new BitSet();
+            final var readsEdges = new ArrayList<Integer>();
+            for (final var entry : transitions.get(target).entrySet()) {
+                if (entry.getKey() instanceof TokenKind tokenKind) {
+                    dr.set(tokenKind.getIndex());
+                } else if (isNullable(entry.getKey())) {
+                    readsEdges.add(transitionIndex.get(new Transition(target, (NonTerminal) entry.getKey())));
+                }
+            }
+            // 接受项目 S -> S' . 之后只能是 EOF
+            if (including.get(target).contains(new Item(argumentProduction, argumentProduction.body().size()))) {
+                dr.set(TokenKind.eof().getIndex());
+            }
+            directRead.add(dr);
+            reads.add(readsEdges);
+            includes.add(new ArrayList<>());
+        }
+
+        // includes 与 lookback: 对每个非终结符转移 (p', B) 与每条 B -> β, 沿 β 从 p' 走到底
+        final var lookback = new HashMap<Status, Map<Production, List<Integer>>>();
+        for (int idx = 0; idx < count; idx++) {
+            final var transition = ntTransitions.get(idx);
+            final var finalIdx = idx;
+            getProductionsByHead(transition.symbol()).forEach(production -> {
+                final var body = production.body();
+                var current = transition.from();
+                for (int pos = 0; pos < body.size(); pos++) {
+                    final var symbol = body.get(pos);
+                    if (symbol instanceof NonTerminal nonTerminal
+                        && body.subList(pos + 1, body.size()).stream().allMatch(this::isNullable)) {
+                        includes.get(transitionIndex.get(new Transition(current, nonTerminal))).add(finalIdx);
+                    }
+                    current = transit(current, symbol);
+                }
+                lookback.computeIfAbsent(current, s -> new HashMap<>())
+                    .computeIfAbsent(production, p -> new ArrayList<>())
+                    .add(finalIdx);
+            });
+        }
+
+        final var read = digraph(directRead, reads);
+        final var followSets = digraph(read, includes);
+
+        for (final var byStatus : lookback.entrySet()) {
+            final var row = new HashMap<Production, Set<TokenKind>>();
+            for (final var byProduction : byStatus.getValue().entrySet()) {
+                final var bits = new BitSet();
+                byProduction.getValue().forEach(idx -> bits.or(followSets.get(idx)));
+                final var lookaheadSet = new LinkedHashSet<TokenKind>();
+                bits.stream().forEach(kind -> lookaheadSet.add(TokenKind.fromIndex(kind)));
+                row.put(byProduction.getKey(), lookaheadSet);
+            }
+            lalrLookahead.put(byStatus.getKey(), row);
+        }
+    }
+
+    /**
+     * DeRemer-Pennello 的 digraph 算法: 求 F(x) = F'(x) ∪ ⋃{F(y) | x R y}, 同一强连通分量中的 x 共享同一个结果
+     *
+     * @param initial 每个 x 的 F'(x), 不会被修改
+     * @param edges   关系 R 的邻接表
+     * @return 每个 x 的 F(x)
+     */
+    private static List<BitSet> digraph(List<BitSet> initial, List<List<Integer>> edges) {
+        final var count = initial.size();
+        final var result = new ArrayList<BitSet>(count);
+        for (final var set : initial) {
+            result.add((BitSet) set.clone());
+        }
+
+        final var depth = new int[count];
+        final var stack = new ArrayDeque<Integer>();
+        for (int x = 0; x < count; x++) {
+            if (depth[x] == 0) {
+                traverse(x, depth, stack, result, edges);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从 root 开始的深度优先遍历. 关系链可能很长, 因此用显式的栈代替递归, 以免耗尽线程栈
+     */
+    private static void traverse(int root, int[] depth, Deque<Integer> stack, List<BitSet> result, List<List<Integer>> edges) {
+        // 每帧为 {x, 下一条待处理的边的下标, 进入 x 时的深度}
+        final var frames = new ArrayDeque<int[]>();
+        stack.push(root);
+        depth[root] = stack.size();
+        frames.push(new int[]{root, 0, depth[root]});
+
+        while (!frames.isEmpty()) {
+            final var frame = frames.peek();
+            final int x = frame[0];
+            final var out = edges.get(x);
+            if (frame[1] < out.size()) {
+                final int y = out.get(frame[1]);
+                if (depth[y] == 0) {
+                    // 先遍历 y, 返回后这条边仍是当前边, 再合并 y 的结果
+                    stack.push(y);
+                    depth[y] = stack.size();
+                    frames.push(new int[]{y, 0, depth[y]});
+                    continue;
+                }
+                depth[x] = Math.min(depth[x], depth[y]);
+                result.get(x).or(result.get(y));
+                frame[1]++;
+                continue;
+            }
+
+            frames.pop();
+            if (depth[x] == frame[2]) {
+                while (true) {
+                    final int top = stack.pop();
+                    depth[top] = Integer.MAX_VALUE;
+                    if (top == x) {
+                        break;
+                    }
+                    result.set(top, result.get(x));
+                }
+            }
+        }
+    }
+
+    //============================== 规范 LR(1) ==============================
+
+    /**
+     * LR(1) 项目, 即 LR(0) 项目 (核心) 加上一个向前看符号
+     *
+     * @param core      LR(0) 项目
+     * @param lookahead 向前看符号
+     */
+    private record LR1Item(Item core, TokenKind lookahead) {
+        @Override
+        public String toString() {
+            return core + ", " + lookahead;
+        }
+    }
+
+    private final Map<Status, Set<LR1Item>> includingLR1 = new HashMap<>();
+    private final Map<Status, Map<Term, Status>> transitionsLR1 = new HashMap<>();
+
+    /**
+     * @param sequence 文法符号串 β
+     * @param last     紧随其后的终结符 a
+     * @return FIRST(βa)
+     */
+    private Set<TokenKind> firstOfSequence(List<Term> sequence, TokenKind last) {
+        final var result = firstOfSequence(sequence);
+        if (sequence.stream().allMatch(this::isNullable)) {
+            result.set(last.getIndex());
+        }
+        return toKinds(result);
+    }
+
+    /**
+     * LR(1) 项目集的闭包: 对 [A -> α . B β, a], 加入所有 [B -> . γ, b], 其中 b ∈ FIRST(βa)
+     */
+    private Set<LR1Item> constructLR1Closure(Set<LR1Item> sourceItems) {
+        final var result = new LinkedHashSet<>(sourceItems);
+        final var unexpanded = new ArrayDeque<>(sourceItems);
+
+        while (!unexpanded.isEmpty()) {
+            final var top = unexpanded.pollFirst();
+            final var core = top.core();
+            core.getAfterDot().ifPresent(afterDot -> {
+                final var body = core.production().body();
+                final var lookaheads = firstOfSequence(body.subList(core.dot() + 1, body.size()), top.lookahead());
+                getProductionsByHead(afterDot).forEach(production -> {
+                    for (final var lookahead : lookaheads) {
+                        final var item = new LR1Item(new Item(production, 0), lookahead);
+                        if (result.add(item)) {
+                            unexpanded.add(item);
+                        }
+                    }
+                });
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * 构造规范 LR(1) 项目集族, 同时记录状态之间的转移
+     */
+    private void constructLR1DFA() {
+        final var terms = new LinkedHashSet<Term>();
+        terms.addAll(nonTerminals);
+        terms.addAll(terminals);
+
+        final var initItem = new LR1Item(new Item(productions.get(0), 0), TokenKind.eof());
+        final var initClosure = constructLR1Closure(Set.of(initItem));
+        final var statusOf = new HashMap<Set<LR1Item>, Status>();
+        final var unexpanded = new ArrayDeque<Set<LR1Item>>();
+        statusOf.put(initClosure, addLR1Status(initClosure));
+        unexpanded.add(initClosure);
+
+        while (!unexpanded.isEmpty()) {
+            final var items = unexpanded.pollFirst();
+            final var row = new HashMap<Term, Status>();
+            for (final var term : terms) {
+                final var kernel = new LinkedHashSet<LR1Item>();
+                for (final var item : items) {
+                    if (item.core().getAfterDot().map(term::equals).orElse(false)) {
+                        kernel.add(new LR1Item(item.core().getNextItem().orElseThrow(), item.lookahead()));
+                    }
+                }
+                if (kernel.isEmpty()) {
+                    continue;
+                }
+
+                final var to = constructLR1Closure(kernel);
+                var next = statusOf.get(to);
+                if (next == null) {
+                    next = addLR1Status(to);
+                    statusOf.put(to, next);
+                    unexpanded.addLast(to);
+                }
+                row.put(term, next);
+            }
+            transitionsLR1.put(statusOf.get(items), row);
+        }
+    }
+
+    private Status addLR1Status(Set<LR1Item> items) {
+        final var status = Status.create(allStatusInIndexOrder.size());
+        allStatusInIndexOrder.add(status);
+        includingLR1.put(status, items);
+        return status;
+    }
+
+    /**
+     * 按规范 LR(1) 项目集族构造分析表, 只在项目自身的向前看符号上规约
+     */
+    private void genLR1Table() {
+        final var argumentProduction = productions.get(0);
+        for (final var status : allStatusInIndexOrder) {
+            for (final var item : includingLR1.get(status)) {
+                final var core = item.core();
+                if (core.isDotAtEnd()) {
+                    if (core.production().equals(argumentProduction)) {
+                        status.setAction(TokenKind.eof(), Action.accept());
+                    } else {
+                        status.setAction(item.lookahead(), Action.reduce(core.production()));
+                    }
+                }
+            }
+
+            for (final var entry : transitionsLR1.get(status).entrySet()) {
+                if (entry.getKey() instanceof TokenKind tokenKind) {
+                    status.setAction(tokenKind, Action.shift(entry.getValue()));
+                } else {
+                    status.setGoto((NonTerminal) entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
 }
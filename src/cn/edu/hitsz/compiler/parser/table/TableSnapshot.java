@@ -0,0 +1,280 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * LR 分析表的二进制快照
+ * <br>
+ * {@link TableLoader} 每次启动都要按字符串切分 CSV, 再以产生式文本逐个查出规约动作的产生式, {@link GrammarInfo} 还要再读一遍语法文件.
+ * 该类在第一次加载时把读入的分析表, 文法与 TokenKind 写成一个二进制快照, 之后的启动直接映射该文件并按下标重建 LRTable,
+ * 同时用快照中的产生式初始化 GrammarInfo, 不再解析任何文本.
+ * <br>
+ * 快照头部记录了格式版本与码点文件, 语法文件和分析表文件内容的哈希, 任何一个源文件改变 (或格式升级) 之后快照即失效, 会被重新生成.
+ * <br>
+ * 快照的格式 (大端序):
+ * <pre>
+ * int    MAGIC, int VERSION, long 源文件哈希
+ * int    TokenKind 数量 n, 随后按稠密编号给出 n 个标识符
+ * int    非终结符数量 m, 随后给出 m 个名字
+ * int    产生式数量 p, 随后每条给出: 文本, 产生式编号, 产生式头的非终结符下标, 体长, 体中各符号的编码
+ * int    分析表的终结符列数, 随后给出各列的 TokenKind 稠密编号
+ * int    分析表的非终结符列数, 随后给出各列的非终结符下标
+ * int    状态数 s, 随后给出各状态的编号
+ * int[s][终结符列数]   ACTION 表
+ * int[s][非终结符列数] GOTO 表, 出错为 -1
+ * </pre>
+ * 字符串以 short 长度加 UTF-8 字节存放. 文法符号编码为: 终结符是其稠密编号, 非终结符 k 是 -(k + 1).
+ * ACTION 的编码为 0 表示错误, 3 表示接受, {@code 状态下标 << 2 | 1} 表示移入, {@code 产生式下标 << 2 | 2} 表示规约.
+ */
+public class TableSnapshot {
+    /**
+     * 读取分析表, 快照有效时直接从快照读取, 否则读取 CSV 并写出新的快照
+     *
+     * @param tablePath    CSV 格式的分析表路径
+     * @param snapshotPath 快照路径
+     * @return LRTable
+     */
+    public LRTable load(String tablePath, String snapshotPath) {
+        final var hash = hashSources(tablePath);
+        if (Files.isRegularFile(Paths.get(snapshotPath))) {
+            try {
+                final var table = read(snapshotPath, hash);
+                if (table != null) {
+                    return table;
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                // 快照损坏, 重新生成
+            }
+        }
+
+        final var table = new TableLoader().load(tablePath);
+        FileUtils.writeBytes(snapshotPath, write(table, hash));
+        return table;
+    }
+
+    private static final int MAGIC = 0x4C525453;
+    private static final int VERSION = 1;
+
+    private static final int SHIFT = 1;
+    private static final int REDUCE = 2;
+    private static final int ACCEPT = 3;
+    private static final int TAG_BITS = 2;
+
+    /**
+     * @return 码点文件, 语法文件与分析表文件内容的哈希
+     */
+    private static long hashSources(String tablePath) {
+        final var crc = new CRC32C();
+        var hash = (long) VERSION;
+        for (final var path : List.of(FilePathConfig.CODING_MAP_PATH, FilePathConfig.GRAMMAR_PATH, tablePath)) {
+            crc.reset();
+            final var bytes = FileUtils.readBytes(path);
+            crc.update(bytes);
+            hash = hash * 0x100000001B3L ^ (crc.getValue() << 32 | bytes.length);
+        }
+        return hash;
+    }
+
+    //============================== 读取 ==============================
+
+    /**
+     * @return 重建出的分析表, 快照与当前的源文件或 TokenKind 不一致时返回 null
+     */
+    private static LRTable read(String snapshotPath, long hash) {
+        final var buffer = FileUtils.mapFile(snapshotPath);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != hash) {
+            return null;
+        }
+
+        final var tokenKindCount = buffer.getInt();
+        if (tokenKindCount != TokenKind.count()) {
+            return null;
+        }
+        for (int idx = 0; idx < tokenKindCount; idx++) {
+            if (!readString(buffer).equals(TokenKind.fromIndex(idx).getIdentifier())) {
+                return null;
+            }
+        }
+
+        final var nonTerminals = new NonTerminal[buffer.getInt()];
+        for (int idx = 0; idx < nonTerminals.length; idx++) {
+            nonTerminals[idx] = new NonTerminal(readString(buffer));
+        }
+
+        final var productionCount = buffer.getInt();
+        final var productions = new ArrayList<Production>(productionCount);
+        final var texts = new ArrayList<String>(productionCount);
+        for (int idx = 0; idx < productionCount; idx++) {
+            texts.add(readString(buffer));
+            final var index = buffer.getInt();
+            final var head = nonTerminals[buffer.getInt()];
+            final var body = new ArrayList<Term>();
+            final var bodyLength = buffer.getInt();
+            for (int pos = 0; pos < bodyLength; pos++) {
+                final var term = buffer.getInt();
+                body.add(term >= 0 ? TokenKind.fromIndex(term) : nonTerminals[-term - 1]);
+            }
+            productions.add(new Production(index, head, body));
+        }
+        // 若语法文件已经被读取过, 则沿用其中的产生式对象
+        final var grammar = GrammarInfo.preload(productions, texts);
+
+        final var terminals = new ArrayList<TokenKind>();
+        final var terminalCount = buffer.getInt();
+        for (int idx = 0; idx < terminalCount; idx++) {
+            terminals.add(TokenKind.fromIndex(buffer.getInt()));
+        }
+        final var tableNonTerminals = new ArrayList<NonTerminal>();
+        final var nonTerminalCount = buffer.getInt();
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            tableNonTerminals.add(nonTerminals[buffer.getInt()]);
+        }
+
+        final var statuses = new Status[buffer.getInt()];
+        for (int idx = 0; idx < statuses.length; idx++) {
+            statuses[idx] = Status.create(buffer.getInt());
+        }
+        for (final var status : statuses) {
+            for (final var terminal : terminals) {
+                final var cell = buffer.getInt();
+                final var value = cell >>> TAG_BITS;
+                status.setAction(terminal, switch (cell & ((1 << TAG_BITS) - 1)) {
+                    case SHIFT -> Action.shift(statuses[value]);
+                    case REDUCE -> Action.reduce(grammar.get(value));
+                    case ACCEPT -> Action.accept();
+                    default -> Action.error();
+                });
+            }
+            for (final var nonTerminal : tableNonTerminals) {
+                final var cell = buffer.getInt();
+                status.setGoto(nonTerminal, cell < 0 ? Status.error() : statuses[cell]);
+            }
+        }
+
+        return new LRTable(List.of(statuses), terminals, tableNonTerminals);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final var bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //============================== 写出 ==============================
+
+    private static byte[] write(LRTable table, long hash) {
+        final var productions = GrammarInfo.getProductionsInOrder();
+        final var texts = new HashMap<Production, String>();
+        GrammarInfo.getProductions().forEach((text, production) -> texts.put(production, text));
+
+        // 非终结符: 先是语法文件中出现的, 再是只出现在分析表中的
+        final var nonTerminalIndex = new HashMap<NonTerminal, Integer>();
+        final var nonTerminals = new ArrayList<NonTerminal>();
+        final var productionIndex = new HashMap<Production, Integer>();
+        for (final var production : productions) {
+            productionIndex.put(production, productionIndex.size());
+            final var terms = new ArrayList<Term>(production.body());
+            terms.add(0, production.head());
+            for (final var term : terms) {
+                if (term instanceof NonTerminal nonTerminal && !nonTerminalIndex.containsKey(nonTerminal)) {
+                    nonTerminalIndex.put(nonTerminal, nonTerminals.size());
+                    nonTerminals.add(nonTerminal);
+                }
+            }
+        }
+        for (final var nonTerminal : table.getNonTerminals()) {
+            if (!nonTerminalIndex.containsKey(nonTerminal)) {
+                nonTerminalIndex.put(nonTerminal, nonTerminals.size());
+                nonTerminals.add(nonTerminal);
+            }
+        }
+
+        final var statuses = table.getStatusInIndexOrder();
+        final var statusIndex = new HashMap<Status, Integer>();
+        for (final var status : statuses) {
+            statusIndex.put(status, statusIndex.size());
+        }
+
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(hash);
+
+            out.writeInt(TokenKind.count());
+            for (int idx = 0; idx < TokenKind.count(); idx++) {
+                writeString(out, TokenKind.fromIndex(idx).getIdentifier());
+            }
+
+            out.writeInt(nonTerminals.size());
+            for (final var nonTerminal : nonTerminals) {
+                writeString(out, nonTerminal.getTermName());
+            }
+
+            out.writeInt(productions.size());
+            for (final var production : productions) {
+                writeString(out, texts.get(production));
+                out.writeInt(production.index());
+                out.writeInt(nonTerminalIndex.get(production.head()));
+                out.writeInt(production.body().size());
+                for (final var term : production.body()) {
+                    out.writeInt(term instanceof TokenKind tokenKind
+                        ? tokenKind.getIndex() : -nonTerminalIndex.get((NonTerminal) term) - 1);
+                }
+            }
+
+            out.writeInt(table.getTerminals().size());
+            for (final var terminal : table.getTerminals()) {
+                out.writeInt(terminal.getIndex());
+            }
+            out.writeInt(table.getNonTerminals().size());
+            for (final var nonTerminal : table.getNonTerminals()) {
+                out.writeInt(nonTerminalIndex.get(nonTerminal));
+            }
+
+            out.writeInt(statuses.size());
+            for (final var status : statuses) {
+                out.writeInt(status.index());
+            }
+            for (final var status : statuses) {
+                for (final var terminal : table.getTerminals()) {
+                    final var action = status.getAction(terminal);
+                    out.writeInt(switch (action.getKind()) {
+                        case Shift -> statusIndex.get(action.getStatus()) << TAG_BITS | SHIFT;
+                        case Reduce -> productionIndex.get(action.getProduction()) << TAG_BITS | REDUCE;
+                        case Accept -> ACCEPT;
+                        case Error -> 0;
+                    });
+                }
+                for (final var nonTerminal : table.getNonTerminals()) {
+                    final var goto_ = status.getGoto(nonTerminal);
+                    out.writeInt(goto_.isError() ? -1 : statusIndex.get(goto_));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can not write table snapshot", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
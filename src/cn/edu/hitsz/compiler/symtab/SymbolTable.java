@@ -3,9 +3,12 @@ package cn.edu.hitsz.compiler.symtab;
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -38,11 +41,62 @@ public class SymbolTable {
      * @throws RuntimeException 该符号已在表中存在
      */
     public SymbolTableEntry add(String text) {
-        SymbolTableEntry symbolTableEntry = new SymbolTableEntry(text);
-        symbolTableMap.put(text, symbolTableEntry);
+        final var canonical = nameOf(intern(text));
+        SymbolTableEntry symbolTableEntry = new SymbolTableEntry(canonical);
+        symbolTableMap.put(canonical, symbolTableEntry);
         return symbolTableEntry;
     }
 
+    /**
+     * 驻留源代码中一段 UTF-8 编码的标识符, 若该标识符尚不在符号表中则同时新增其条目.
+     * <br>
+     * 对字节范围只计算一次哈希, 命中时直接与已驻留的字节比较, 不会构造任何字符串. 同一标识符总是得到同一个符号编号,
+     * 且 {@link #nameOf} 返回同一个 String 实例, 后续以它为键的查找 (如 {@code has}, 以该名字构造的 IRVariable 之间的比较) 都能走引用相等的快速路径.
+     *
+     * @param source 源代码
+     * @param begin  标识符的起始位置
+     * @param end    标识符的结束位置 (不含)
+     * @return 该标识符的符号编号
+     */
+    public int intern(ByteBuffer source, int begin, int end) {
+        int hash = 0;
+        for (int idx = begin; idx < end; idx++) {
+            hash = 31 * hash + source.get(idx);
+        }
+
+        final var mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            final var symbol = slots[slot] - 1;
+            if (symbol < 0) {
+                final var bytes = new byte[end - begin];
+                source.get(begin, bytes);
+                return insert(slot, hash, bytes, new String(bytes, StandardCharsets.UTF_8));
+            }
+            if (hashes[slot] == hash && sameBytes(nameBytes.get(symbol), source, begin, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * 驻留一个标识符, 若该标识符尚不在符号表中则同时新增其条目
+     *
+     * @param text 标识符
+     * @return 该标识符的符号编号
+     */
+    public int intern(String text) {
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * @param symbol 符号编号
+     * @return 该符号的驻留字符串
+     */
+    public String nameOf(int symbol) {
+        return names.get(symbol);
+    }
+
     /**
      * 判断符号表中有无条目
      *
@@ -53,6 +107,61 @@ public class SymbolTable {
         return symbolTableMap.containsKey(text);
     }
 
+    //============================== 标识符驻留 ==============================
+    // 以开放寻址哈希表存放符号编号 + 1 (0 表示空槽), 并缓存每个槽的哈希以减少字节比较
+    private int[] slots = new int[64];
+    private int[] hashes = new int[64];
+    private final List<String> names = new ArrayList<>();
+    private final List<byte[]> nameBytes = new ArrayList<>();
+
+    private int insert(int slot, int hash, byte[] bytes, String text) {
+        final var symbol = names.size();
+        names.add(text);
+        nameBytes.add(bytes);
+        slots[slot] = symbol + 1;
+        hashes[slot] = hash;
+        if (!symbolTableMap.containsKey(text)) {
+            symbolTableMap.put(text, new SymbolTableEntry(text));
+        }
+
+        // 装载因子超过 1/2 时扩容
+        if (names.size() * 2 > slots.length) {
+            final var oldSlots = slots;
+            final var oldHashes = hashes;
+            slots = new int[oldSlots.length * 2];
+            hashes = new int[oldSlots.length * 2];
+            final var mask = slots.length - 1;
+            for (int idx = 0; idx < oldSlots.length; idx++) {
+                if (oldSlots[idx] == 0) {
+                    continue;
+                }
+                var newSlot = mix(oldHashes[idx]) & mask;
+                while (slots[newSlot] != 0) {
+                    newSlot = (newSlot + 1) & mask;
+                }
+                slots[newSlot] = oldSlots[idx];
+                hashes[newSlot] = oldHashes[idx];
+            }
+        }
+        return symbol;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameBytes(byte[] bytes, ByteBuffer source, int begin, int end) {
+        if (bytes.length != end - begin) {
+            return false;
+        }
+        for (int idx = 0; idx < bytes.length; idx++) {
+            if (bytes[idx] != source.get(begin + idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 获得符号表的所有条目以供 {@code dumpTable} 使用
      *
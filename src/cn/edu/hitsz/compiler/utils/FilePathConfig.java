@@ -15,6 +15,11 @@ public final class FilePathConfig {
      */
     public static final String CODING_MAP_PATH = "data/in/coding_map.csv";
 
+    /**
+     * 词法描述文件, 每行为一类词法单元的正则表达式
+     */
+    public static final String LEXER_SPEC_PATH = "data/in/lexer_spec.txt";
+
     /**
      * 语法文件
      */
@@ -25,6 +30,11 @@ public final class FilePathConfig {
      */
     public final static String LR1_TABLE_PATH = "data/in/LR1_table.csv";
 
+    /**
+     * LR 分析表的二进制快照, 首次读取分析表时生成, 源文件改变后自动重新生成
+     */
+    public final static String LR1_TABLE_SNAPSHOT_PATH = "data/out/LR1_table.snapshot";
+
 
     //==================================== 输出文件 ========================================//
     /**
@@ -1,10 +1,15 @@
 package cn.edu.hitsz.compiler.utils;
 
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 
@@ -22,6 +27,61 @@ public final class FileUtils {
         return String.join("\n", readLines(path));
     }
 
+    /**
+     * 以只读方式将文件映射到内存, 文件内容不会被复制到堆上
+     *
+     * @param path 文件路径
+     * @return 映射出的缓冲区, 其内容为文件的原始字节
+     */
+    public static MappedByteBuffer mapFile(String path) {
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 读取文件的全部字节
+     *
+     * @param path 文件路径
+     * @return 文件内容
+     */
+    public static byte[] readBytes(String path) {
+        try {
+            return Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 将字节写入指定文件, 文件已存在时替换
+     * <br>
+     * 先写入同目录下的临时文件再移动到目标路径, 因此其他读者 (包括仍在映射旧文件的 MappedByteBuffer) 不会看到写了一半的内容
+     *
+     * @param path  要写入的文件路径
+     * @param bytes 要写入的内容
+     */
+    public static void writeBytes(String path, byte[] bytes) {
+        final var target = Paths.get(path).toAbsolutePath();
+        try {
+            final var temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, bytes);
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
     /**
      * 读取文本文件并按行以 {@code ArrayList<String>} 形式返回文件内容
      *
@@ -0,0 +1,104 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * 批量模拟执行 IR 程序
+ * <br>
+ * 各程序互不相关, 按下标区间递归二分后交给 ForkJoinPool 执行, 空闲的线程会窃取其他线程尚未执行的区间.
+ * 每个线程只保留一个寄存器堆, 在它执行的各个程序间复用, 不够大时才重新分配.
+ * <br>
+ * 结果与输入的顺序一致, 每个结果记录该程序降低与执行的总耗时; 执行出错的程序不影响其他程序.
+ */
+public class IRBatchEmulator {
+    /**
+     * 单个程序的执行结果
+     *
+     * @param value 返回值, 出错时为空
+     * @param error 执行时抛出的异常, 未出错时为 null
+     * @param nanos 降低与执行的总耗时, 单位为纳秒
+     */
+    public record Result(Optional<Integer> value, RuntimeException error, long nanos) {
+        public boolean failed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * 在公共线程池上执行所有程序
+     */
+    public static List<Result> run(Stream<List<Instruction>> programs) {
+        return run(programs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param programs 各个 IR 程序
+     * @param pool     执行所用的线程池
+     * @return 按输入顺序排列的执行结果
+     */
+    public static List<Result> run(Stream<List<Instruction>> programs, ForkJoinPool pool) {
+        final var inputs = programs.toList();
+        final var results = new Result[inputs.size()];
+        pool.invoke(new Batch(inputs, results, 0, inputs.size()));
+        return List.of(results);
+    }
+
+    /**
+     * 区间内的程序数不超过该值时不再拆分
+     */
+    private static final int GRAIN = 16;
+
+    private static final ThreadLocal<int[]> REGISTERS = ThreadLocal.withInitial(() -> new int[64]);
+
+    private static class Batch extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Batch(List<List<Instruction>> programs, Result[] results, int from, int to) {
+            this.programs = programs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                for (int idx = from; idx < to; idx++) {
+                    results[idx] = emulate(programs.get(idx));
+                }
+            } else {
+                final var mid = (from + to) >>> 1;
+                invokeAll(new Batch(programs, results, from, mid), new Batch(programs, results, mid, to));
+            }
+        }
+
+        private final List<List<Instruction>> programs;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+    }
+
+    private static Result emulate(List<Instruction> program) {
+        final var start = System.nanoTime();
+        try {
+            final var emulator = IREmulator.load(program);
+            var registers = REGISTERS.get();
+            if (registers.length < emulator.slotCount()) {
+                registers = new int[Math.max(emulator.slotCount(), registers.length * 2)];
+                REGISTERS.set(registers);
+            }
+            final var value = emulator.execute(registers);
+            return new Result(value, null, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return new Result(Optional.empty(), e, System.nanoTime() - start);
+        }
+    }
+}
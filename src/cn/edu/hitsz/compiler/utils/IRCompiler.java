@@ -0,0 +1,348 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * 把 {@link IREmulator} 降低后的指令序列编译为一个隐藏类, 供 IREmulator 在多次执行同一段 IR 时使用
+ * <br>
+ * 生成的类实现 {@link IntSupplier}, {@code getAsInt} 中每个变量槽位对应一个 JVM 局部变量, 立即数直接作为常量压栈,
+ * MOV/ADD/SUB/MUL/RET 分别编译为 {@code iload/iadd/isub/imul} 与写入返回值所在的局部变量, 最后 {@code ireturn}.
+ * 这样解释器的分派开销完全消失, 并且 C2 可以对整段程序做常量折叠与寄存器分配.
+ * <br>
+ * IR 是直线代码, 生成的方法没有分支, 因此不需要 StackMapTable, 手写一个最小的 class 文件即可.
+ * 变量数或代码长度超出 JVM 方法的限制时不编译.
+ */
+final class IRCompiler {
+    /**
+     * @param code          降低后的指令序列, 格式见 {@link IREmulator}
+     * @param slotCount     槽位数
+     * @param constantSlots 哪些槽位存放立即数
+     * @param constants     各槽位的初值, 即立即数的值
+     * @return 编译出的程序, 返回最后一条 RET 的值; 无法编译或无法加载时返回 null, 由调用者继续解释执行
+     */
+    static IntSupplier compile(int[] code, int slotCount, BitSet constantSlots, int[] constants) {
+        final var compiler = new IRCompiler(constantSlots, constants);
+        final byte[] bytes;
+        try {
+            bytes = compiler.generate(code, slotCount);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+
+        try {
+            final var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            final var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return (IntSupplier) constructor.invoke();
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            // 加载失败 (如生成的类未通过校验) 不影响结果, 解释执行即可
+            return null;
+        }
+    }
+
+    /**
+     * JVM 方法字节码长度的上限
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+    /**
+     * JVM 方法局部变量数的上限
+     */
+    private static final int MAX_LOCALS = 65535;
+
+    private static final String CLASS_NAME = IRCompiler.class.getPackageName().replace('.', '/') + "/CompiledIR";
+
+    //============================== 字节码 ==============================
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_0 = 0x1A;
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ISTORE = 0x36;
+    private static final int ISTORE_0 = 0x3B;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IRETURN = 0xAC;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int WIDE = 0xC4;
+
+    //============================== 常量池 ==============================
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final BitSet constantSlots;
+    private final int[] constants;
+
+    /**
+     * 常量池, 每项为已经编码好的字节
+     */
+    private final List<byte[]> pool = new ArrayList<>();
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private IRCompiler(BitSet constantSlots, int[] constants) {
+        this.constantSlots = constantSlots;
+        this.constants = constants;
+    }
+
+    private byte[] generate(int[] code, int slotCount) {
+        // 局部变量 0 是 this, 之后依次是各变量槽位, 最后一个存放返回值
+        final var locals = new int[slotCount];
+        var localCount = 1;
+        for (int slot = 0; slot < slotCount; slot++) {
+            locals[slot] = constantSlots.get(slot) ? -1 : localCount++;
+        }
+        final var returnLocal = localCount++;
+        if (localCount > MAX_LOCALS) {
+            throw new IllegalStateException("Too many locals");
+        }
+
+        var hasReturn = false;
+        for (int pc = 0; pc < code.length; pc += IREmulator.WIDTH) {
+            final var opcode = code[pc];
+            final var result = code[pc + 1];
+            final var a = code[pc + 2];
+            final var b = code[pc + 3];
+            switch (opcode) {
+                case IREmulator.MOV -> {
+                    load(locals, a);
+                    store(locals[result]);
+                }
+                case IREmulator.ADD, IREmulator.SUB, IREmulator.MUL -> {
+                    load(locals, a);
+                    load(locals, b);
+                    body.write(opcode == IREmulator.ADD ? IADD : opcode == IREmulator.SUB ? ISUB : IMUL);
+                    store(locals[result]);
+                }
+                case IREmulator.RET -> {
+                    load(locals, a);
+                    store(returnLocal);
+                    hasReturn = true;
+                }
+                default -> throw new RuntimeException("Unknown opcode: " + opcode);
+            }
+
+            if (body.size() > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Method too large");
+            }
+        }
+
+        // 没有 RET 时返回值不会被使用, 直接返回 0
+        if (hasReturn) {
+            load(returnLocal);
+        } else {
+            body.write(ICONST_0);
+        }
+        body.write(IRETURN);
+        if (body.size() > MAX_CODE_LENGTH) {
+            throw new IllegalStateException("Method too large");
+        }
+
+        return assemble(localCount);
+    }
+
+    private void load(int[] locals, int slot) {
+        if (locals[slot] < 0) {
+            push(constants[slot]);
+        } else {
+            load(locals[slot]);
+        }
+    }
+
+    private void load(int local) {
+        localInstruction(ILOAD_0, ILOAD, local);
+    }
+
+    private void store(int local) {
+        localInstruction(ISTORE_0, ISTORE, local);
+    }
+
+    private void localInstruction(int shortForm, int opcode, int local) {
+        if (local <= 3) {
+            body.write(shortForm + local);
+        } else if (local <= 0xFF) {
+            body.write(opcode);
+            body.write(local);
+        } else {
+            body.write(WIDE);
+            body.write(opcode);
+            writeShort(body, local);
+        }
+    }
+
+    private void push(int value) {
+        if (value >= -1 && value <= 5) {
+            body.write(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            body.write(BIPUSH);
+            body.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            body.write(SIPUSH);
+            writeShort(body, value);
+        } else {
+            final var index = integerConstant(value);
+            if (index <= 0xFF) {
+                body.write(LDC);
+                body.write(index);
+            } else {
+                body.write(LDC_W);
+                writeShort(body, index);
+            }
+        }
+    }
+
+    //============================== class 文件 ==============================
+
+    private byte[] assemble(int maxLocals) {
+        // 常量池要先写出, 所有常量都需在此之前加入
+        final var thisClass = classConstant(CLASS_NAME);
+        final var superClass = classConstant("java/lang/Object");
+        final var supplier = classConstant("java/util/function/IntSupplier");
+        final var objectInit = constant("M:java/lang/Object.<init>()V", CONSTANT_METHODREF,
+            superClass, constant("N:<init>()V", CONSTANT_NAME_AND_TYPE, utf8("<init>"), utf8("()V")));
+        final var codeName = utf8("Code");
+        final var initName = utf8("<init>");
+        final var initDescriptor = utf8("()V");
+        final var runName = utf8("getAsInt");
+        final var runDescriptor = utf8("()I");
+
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            // Java 17
+            out.writeShort(61);
+
+            out.writeShort(pool.size() + 1);
+            for (final var entry : pool) {
+                out.write(entry);
+            }
+
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(supplier);
+            // 没有字段
+            out.writeShort(0);
+
+            out.writeShort(2);
+            final var init = new ByteArrayOutputStream();
+            init.write(ALOAD_0);
+            init.write(INVOKESPECIAL);
+            writeShort(init, objectInit);
+            init.write(RETURN);
+            writeMethod(out, initName, initDescriptor, codeName, 1, 1, init.toByteArray());
+            writeMethod(out, runName, runDescriptor, codeName, 2, maxLocals, body.toByteArray());
+
+            // 没有类属性
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new RuntimeException("Can not assemble compiled IR", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        // 没有异常表与属性
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private int utf8(String text) {
+        final var key = "U:" + text;
+        final var index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(text);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return addConstant(key, bytes.toByteArray());
+    }
+
+    private int classConstant(String name) {
+        final var nameIndex = utf8(name);
+        return constant("C:" + name, CONSTANT_CLASS, nameIndex);
+    }
+
+    private int integerConstant(int value) {
+        final var key = "I:" + value;
+        final var index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        return addConstant(key, new byte[]{
+            CONSTANT_INTEGER, (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+        });
+    }
+
+    /**
+     * @param refs 各项引用的常量池下标
+     */
+    private int constant(String key, int tag, int... refs) {
+        final var index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        final var bytes = new ByteArrayOutputStream();
+        bytes.write(tag);
+        for (final var ref : refs) {
+            writeShort(bytes, ref);
+        }
+        return addConstant(key, bytes.toByteArray());
+    }
+
+    private int addConstant(String key, byte[] entry) {
+        if (pool.size() + 1 >= 0xFFFF) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        pool.add(entry);
+        poolIndex.put(key, pool.size());
+        return pool.size();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -4,72 +4,270 @@ import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.IntSupplier;
 
 /**
  * 用来模拟执行 IR 的类
+ * <br>
+ * 执行前先把 IR 降低为紧凑的 int 指令序列: 每个 IRVariable 编号为寄存器堆中的一个槽位, 每个不同的立即数也占一个槽位并预先写入其值,
+ * 于是每条指令都是 {@code 操作码, 目标槽位, 操作数槽位, 操作数槽位} 四个 int, 执行时只在 int[] 寄存器堆上读写, 不再装箱, 也不再查 HashMap.
+ * <br>
+ * IR 是没有跳转的直线代码, 所以变量在使用前是否被赋值可以在降低时静态确定:
+ * 运算中使用未赋值的变量会在执行时报错, 返回未赋值的变量则得到空的返回值, 都与逐条解释时的行为一致.
+ * 同理, 只有最后一条 RET 决定返回值是否为空, 返回未赋值变量的 RET 与复制未赋值变量的 MOV 都不必生成指令.
+ * <br>
+ * 同一段 IR 被执行 {@link #JIT_THRESHOLD} 次 (或 {@link #load(List, int)} 指定的次数) 之后, 会由 {@link IRCompiler} 编译为 JVM 字节码,
+ * 之后的执行直接调用编译出的方法. 生成并加载隐藏类的开销远大于解释执行一次直线代码, 只有反复执行的 IR 才值得编译.
+ * 超出 JVM 方法的限制而无法编译, 或编译出的类无法加载时, 仍然解释执行.
  */
 public class IREmulator {
     public static IREmulator load(List<Instruction> instructions) {
-        return new IREmulator(instructions);
+        return load(instructions, JIT_THRESHOLD);
+    }
+
+    /**
+     * @param instructions IR 程序
+     * @param jitThreshold 执行多少次之后编译为 JVM 字节码, 不大于 0 时始终解释执行
+     */
+    public static IREmulator load(List<Instruction> instructions, int jitThreshold) {
+        return new IREmulator(instructions, jitThreshold);
     }
 
     public Optional<Integer> execute() {
-        for (final var instruction : instructions) {
-            switch (instruction.getKind()) {
-                case MOV -> {
-                    final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
-                }
+        if (undefinedUse != null) {
+            throw new RuntimeException("Variable %s is used before assignment".formatted(undefinedUse));
+        }
 
-                case ADD -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
-                }
+        if (++executions == jitThreshold) {
+            compiled = IRCompiler.compile(code, slotCount, constantSlotSet, constants);
+        }
 
-                case SUB -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
-                }
+        final int returnValue;
+        if (compiled != null) {
+            returnValue = compiled.getAsInt();
+            // 编译后的代码不保留寄存器堆, 需要时再解释执行一次
+            registers = null;
+        } else {
+            returnValue = interpret();
+        }
+        return returnsValue ? Optional.of(returnValue) : Optional.empty();
+    }
 
-                case MUL -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
-                }
+    /**
+     * 在调用者提供的寄存器堆上解释执行, 供 {@link IRBatchEmulator} 在同一线程的各个程序间复用寄存器堆.
+     * 执行后不能再通过 {@link #eval} 读取变量的值.
+     *
+     * @param registers 长度不小于 {@link #slotCount()} 的寄存器堆
+     */
+    Optional<Integer> execute(int[] registers) {
+        if (undefinedUse != null) {
+            throw new RuntimeException("Variable %s is used before assignment".formatted(undefinedUse));
+        }
+
+        final var returnValue = interpret(registers);
+        return returnsValue ? Optional.of(returnValue) : Optional.empty();
+    }
 
-                case RET -> this.returnValue = eval(instruction.getReturnValue());
+    /**
+     * @return 寄存器堆所需的槽位数
+     */
+    int slotCount() {
+        return slotCount;
+    }
 
-                default -> throw new RuntimeException("Unknown instruction kind: " + instruction.getKind());
+    private int interpret() {
+        final var registers = new int[slotCount];
+        final var returnValue = interpret(registers);
+        this.registers = registers;
+        return returnValue;
+    }
+
+    /**
+     * 在寄存器堆上逐条解释执行
+     *
+     * @return 最后一条返回已赋值变量的 RET 的值
+     */
+    private int interpret(int[] registers) {
+        final var code = this.code;
+        System.arraycopy(constants, 0, registers, 0, slotCount);
+        var returnValue = 0;
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            final var a = code[pc + 2];
+            final var b = code[pc + 3];
+            switch (code[pc]) {
+                case MOV -> registers[code[pc + 1]] = registers[a];
+                case ADD -> registers[code[pc + 1]] = registers[a] + registers[b];
+                case SUB -> registers[code[pc + 1]] = registers[a] - registers[b];
+                case MUL -> registers[code[pc + 1]] = registers[a] * registers[b];
+                case RET -> returnValue = registers[a];
+                default -> throw new RuntimeException("Unknown opcode: " + code[pc]);
             }
         }
-
-        return Optional.ofNullable(this.returnValue);
+        return returnValue;
     }
 
+    /**
+     * @param value IR 值
+     * @return 立即数的值, 或最近一次执行结束时变量的值; 变量未被赋值时返回 null
+     */
     public Integer eval(IRValue value) {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
         } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
+            final var slot = variableSlots.get(variable);
+            if (executions == 0 || slot == null || !defined.get(slot)) {
+                return null;
+            }
+            if (registers == null) {
+                interpret();
+            }
+            return registers[slot];
         } else {
             throw new RuntimeException("Unknown IR value type");
         }
     }
 
-    private IREmulator(List<Instruction> instructions) {
-        this.instructions = instructions;
-        this.environment = new HashMap<>();
-        this.returnValue = null;
+    /**
+     * 默认执行多少次之后编译为 JVM 字节码
+     */
+    public static final int JIT_THRESHOLD = 100;
+
+    //============================== 操作码 ==============================
+    static final int MOV = 0;
+    static final int ADD = 1;
+    static final int SUB = 2;
+    static final int MUL = 3;
+    static final int RET = 4;
+
+    /**
+     * 每条指令占用的 int 数
+     */
+    static final int WIDTH = 4;
+
+    private IREmulator(List<Instruction> instructions, int jitThreshold) {
+        this.jitThreshold = jitThreshold;
+        final var code = new int[instructions.size() * WIDTH];
+
+        var pc = 0;
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            switch (kind) {
+                case MOV -> {
+                    final var from = use(instruction.getFrom(), false);
+                    final var result = slotOf(instruction.getResult());
+                    // 复制未赋值的变量不会出错, 但结果同样是未赋值的
+                    if (from < 0) {
+                        defined.clear(result);
+                        continue;
+                    }
+                    defined.set(result);
+                    pc = emit(code, pc, MOV, result, from, 0);
+                }
+                case ADD, SUB, MUL -> {
+                    final var lhs = use(instruction.getLHS(), true);
+                    final var rhs = use(instruction.getRHS(), true);
+                    final var result = slotOf(instruction.getResult());
+                    defined.set(result);
+                    pc = emit(code, pc, kind == InstructionKind.ADD ? ADD : kind == InstructionKind.SUB ? SUB : MUL, result, lhs, rhs);
+                }
+                case RET -> {
+                    final var value = use(instruction.getReturnValue(), false);
+                    returnsValue = value >= 0;
+                    if (returnsValue) {
+                        pc = emit(code, pc, RET, 0, value, 0);
+                    }
+                }
+                default -> throw new RuntimeException("Unknown instruction kind: " + kind);
+            }
+        }
+
+        this.code = Arrays.copyOf(code, pc);
+        this.constants = Arrays.copyOf(constantValues, slotCount);
+    }
+
+    private static int emit(int[] code, int pc, int opcode, int result, int a, int b) {
+        code[pc] = opcode;
+        code[pc + 1] = result;
+        code[pc + 2] = a;
+        code[pc + 3] = b;
+        return pc + WIDTH;
+    }
+
+    /**
+     * @param value    指令的操作数
+     * @param required 操作数是否必须已被赋值
+     * @return 操作数所在的槽位, 未被赋值时为 -1
+     */
+    private int use(IRValue value, boolean required) {
+        if (value instanceof IRImmediate immediate) {
+            final var slot = constantSlots.get(immediate.getValue());
+            return slot != null ? slot : newConstant(immediate.getValue());
+        } else if (value instanceof IRVariable variable) {
+            final var slot = slotOf(variable);
+            if (!defined.get(slot)) {
+                if (required && undefinedUse == null) {
+                    undefinedUse = variable;
+                }
+                return required ? 0 : -1;
+            }
+            return slot;
+        } else {
+            throw new RuntimeException("Unknown IR value type");
+        }
+    }
+
+    private int slotOf(IRVariable variable) {
+        final var slot = variableSlots.get(variable);
+        if (slot != null) {
+            return slot;
+        }
+        variableSlots.put(variable, slotCount);
+        return slotCount++;
+    }
+
+    private int newConstant(int value) {
+        if (slotCount >= constantValues.length) {
+            constantValues = Arrays.copyOf(constantValues, Math.max(16, slotCount * 2));
+        }
+        constantValues[slotCount] = value;
+        constantSlots.put(value, slotCount);
+        constantSlotSet.set(slotCount);
+        defined.set(slotCount);
+        return slotCount++;
     }
 
-    private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
-    private Integer returnValue;
+    private final int[] code;
+    private final int[] constants;
+    private final Map<IRVariable, Integer> variableSlots = new HashMap<>();
+    private final Map<Integer, Integer> constantSlots = new HashMap<>();
+    private final BitSet constantSlotSet = new BitSet();
+    /**
+     * 降低到当前位置时各槽位是否已被赋值, 降低结束后即为执行结束时的状态
+     */
+    private final BitSet defined = new BitSet();
+    private int[] constantValues = new int[0];
+    private int slotCount = 0;
+    /**
+     * 第一个在运算中使用的未赋值变量
+     */
+    private IRVariable undefinedUse = null;
+    /**
+     * 最后一条 RET 返回的是否为已赋值的变量
+     */
+    private boolean returnsValue = false;
+    private final int jitThreshold;
+    private int executions = 0;
+    private IntSupplier compiled = null;
+    /**
+     * 最近一次执行结束时的寄存器堆
+     */
+    private int[] registers = null;
 }